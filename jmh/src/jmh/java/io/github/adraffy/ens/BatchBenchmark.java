@@ -0,0 +1,70 @@
+package io.github.adraffy.ens;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 1M names: compare sequential() against normalizeAll() at each parallelism
+// scaling = sequential / normalizeAll
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchBenchmark {
+
+    static final int SIZE = 1 << 20;
+
+    @Param({"1", "2", "4", "8", "16"})
+    int parallelism;
+
+    ENSIP15 ens;
+    String[] names;
+    ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        ens = ENSNormalize.ENSIP15;
+        names = new String[SIZE];
+        Corpus[] mix = { Corpus.ASCII, Corpus.MIXED_CASE, Corpus.EMOJI, Corpus.NON_LATIN, Corpus.INVALID };
+        String[][] sets = new String[mix.length][];
+        for (int i = 0; i < mix.length; i++) {
+            sets[i] = mix[i].names();
+        }
+        for (int i = 0; i < SIZE; i++) {
+            String[] set = sets[i % sets.length];
+            names[i] = set[(i / sets.length) % set.length];
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public NormResult[] normalizeAll() {
+        return ens.normalizeAll(names, pool);
+    }
+
+    @Benchmark
+    public NormResult[] sequential() {
+        NormResult[] results = new NormResult[names.length];
+        ens.normalizeRange(names, results, 0, names.length);
+        return results;
+    }
+
+}
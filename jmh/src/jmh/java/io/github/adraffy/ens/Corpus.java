@@ -0,0 +1,129 @@
+package io.github.adraffy.ens;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public enum Corpus {
+
+    ASCII {
+        @Override
+        String[] names() {
+            return generate(ASCII_LABELS);
+        }
+    },
+    MIXED_CASE {
+        @Override
+        String[] names() {
+            Random r = new Random(SEED);
+            String[] v = generate(ASCII_LABELS);
+            for (int i = 0; i < v.length; i++) {
+                char[] chars = v[i].toCharArray();
+                for (int j = 0; j < chars.length; j++) {
+                    if (r.nextBoolean()) chars[j] = Character.toUpperCase(chars[j]);
+                }
+                v[i] = new String(chars);
+            }
+            return v;
+        }
+    },
+    EMOJI {
+        @Override
+        String[] names() {
+            return generate(EMOJI_LABELS);
+        }
+    },
+    NON_LATIN {
+        @Override
+        String[] names() {
+            return generate(NON_LATIN_LABELS);
+        }
+    },
+    INVALID {
+        @Override
+        String[] names() {
+            return generate(INVALID_LABELS);
+        }
+    },
+    TESTS {
+        @Override
+        String[] names() {
+            ArrayList<String> v = new ArrayList<>();
+            for (Object test: new JSONArray(readResource("/tests.json"))) {
+                v.add(((JSONObject)test).getString("name"));
+            }
+            return v.toArray(new String[v.size()]);
+        }
+    };
+
+    abstract String[] names();
+
+    static final int SIZE = 1024;
+    static final long SEED = 0x15;
+
+    static final String[] TLDS = { "eth", "eth", "eth", "box", "xyz", "com" };
+
+    static final String[] ASCII_LABELS = {
+        "vitalik", "nick", "raffy", "brantly", "ens", "uniswap", "wallet", "0x", "000", "123",
+        "1337", "dao", "nft", "crypto", "defi", "_dev", "a-b", "web3", "the-merge", "gm"
+    };
+
+    static final String[] EMOJI_LABELS = {
+        "💩", "🚴‍♂️", "👨‍👩‍👧‍👦", "👩🏽‍💻", "🏳️‍🌈", "🇺🇸", "🇯🇵",
+        "1⃣", "#️⃣", "0️⃣0️⃣0️⃣", "🔥🔥", "raffy🚴‍♂️", "💎hands", "😀😃😄", "🧑‍🚀"
+    };
+
+    static final String[] NON_LATIN_LABELS = {
+        "ελληνικά", "русский", "україна", "עברית", "العربية", "हिन्दी", "ไทย",
+        "한국어", "日本語", "ひらがな", "カタカナ", "中文", "ქართული", "հայերեն", "café", "naïve", "𝕏"
+    };
+
+    static final String[] INVALID_LABELS = {
+        "a_b", "ab--cd", "", " ", "a b", "_a_", "\u0300a", "a\u0430", "\u03BF\u043E", "🚴\u0300", "x\u200D",
+        "\u2044a", "a\u2044\u2044b", "e\u0301\u0301", "\uFFFD", "a\u0000"
+    };
+
+    // SIZE names of 1-2 random labels + random tld
+    static String[] generate(String[] labels) {
+        Random r = new Random(SEED);
+        String[] v = new String[SIZE];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < SIZE; i++) {
+            sb.setLength(0);
+            if (r.nextInt(4) == 0) {
+                sb.append(labels[r.nextInt(labels.length)]);
+                sb.append(ENSIP15.STOP_CH);
+            }
+            sb.append(labels[r.nextInt(labels.length)]);
+            sb.append(ENSIP15.STOP_CH);
+            sb.append(TLDS[r.nextInt(TLDS.length)]);
+            v[i] = sb.toString();
+        }
+        return v;
+    }
+
+    static byte[] readBytes(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream(name)) {
+            if (in == null) throw new IOException("missing resource: " + name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) >= 0; ) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+
+    static String readResource(String name) {
+        return new String(readBytes(name), StandardCharsets.UTF_8);
+    }
+
+}
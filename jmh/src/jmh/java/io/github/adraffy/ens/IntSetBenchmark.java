@@ -0,0 +1,76 @@
+package io.github.adraffy.ens;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// contains() latency of each representation over the sets decoded from spec.bin
+// memory (approximate bytes) is printed at setup
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntSetBenchmark {
+
+    @Param({"possiblyValid", "ignored", "combiningMarks", "nonSpacingMarks", "shouldEscape", "NFCCheck", "Latin", "Han", "Cyrillic"})
+    String set;
+
+    @Param({"ADAPTIVE", "SORTED", "RANGES", "BITMAP"})
+    String kind;
+
+    static final int PROBES = 4096; // half members, half uniform over [min, max]
+
+    ReadOnlyIntSet lookup;
+    int[] probes;
+    int index;
+
+    static ReadOnlyIntSet decoded(String name) {
+        ENSIP15 ens = ENSNormalize.ENSIP15;
+        switch (name) {
+            case "possiblyValid": return ens.possiblyValid;
+            case "ignored": return ens.ignored;
+            case "combiningMarks": return ens.combiningMarks;
+            case "nonSpacingMarks": return ens.nonSpacingMarks;
+            case "shouldEscape": return ens.shouldEscape;
+            case "NFCCheck": return ens.NFCCheck;
+            default: return ens.groups.stream().filter(g -> g.name.equals(name)).findFirst().get().primary;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        ReadOnlyIntSet source = decoded(set);
+        switch (kind) {
+            case "SORTED": lookup = new ReadOnlyIntSet(source.array, ReadOnlyIntSet.SORTED); break;
+            case "RANGES": lookup = new ReadOnlyIntSet(source.array, ReadOnlyIntSet.RANGES); break;
+            case "BITMAP": lookup = new ReadOnlyIntSet(source.array, ReadOnlyIntSet.BITMAP); break;
+            default: lookup = new ReadOnlyIntSet(source.array);
+        }
+        System.out.println(String.format("%s/%s: size=%d runs=%d kind=%d bytes=%d", set, kind, lookup.size(), ReadOnlyIntSet.countRuns(lookup.array), lookup.kind, lookup.bytes()));
+        Random r = new Random(Corpus.SEED);
+        probes = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = (i & 1) == 0 ? lookup.array[r.nextInt(lookup.size())] : lookup.min + r.nextInt(lookup.max - lookup.min + 1);
+        }
+    }
+
+    @Benchmark
+    public boolean contains() {
+        int cp = probes[index];
+        index = (index + 1) & (PROBES - 1);
+        return lookup.contains(cp);
+    }
+
+}
@@ -0,0 +1,57 @@
+package io.github.adraffy.ens;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NFBenchmark {
+
+    @Param({"ASCII", "EMOJI", "NON_LATIN", "TESTS"})
+    Corpus corpus;
+
+    NF nf;
+    int[][] inputs;
+    int index;
+
+    @Setup
+    public void setup() {
+        nf = ENSNormalize.NF;
+        String[] names = corpus.names();
+        inputs = new int[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            inputs[i] = StringUtils.explode(names[i]);
+        }
+    }
+
+    int[] next() {
+        int[] cps = inputs[index];
+        if (++index == inputs.length) index = 0;
+        return cps;
+    }
+
+    @Benchmark
+    public int[] NFC() {
+        return nf.NFC(next());
+    }
+
+    @Benchmark
+    public int[] NFD() {
+        return nf.NFD(next());
+    }
+
+}
@@ -0,0 +1,76 @@
+package io.github.adraffy.ens;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NormalizeBenchmark {
+
+    @Param({"ASCII", "MIXED_CASE", "EMOJI", "NON_LATIN", "INVALID", "TESTS"})
+    Corpus corpus;
+
+    ENSIP15 ens;
+    String[] names;
+    int index;
+
+    @Setup
+    public void setup() {
+        ens = ENSNormalize.ENSIP15;
+        names = corpus.names();
+    }
+
+    // one name per invocation, cycling through the corpus
+    String next() {
+        String name = names[index];
+        if (++index == names.length) index = 0;
+        return name;
+    }
+
+    @Benchmark
+    public Object normalize() {
+        try {
+            return ens.normalize(next());
+        } catch (InvalidLabelException err) {
+            return err;
+        }
+    }
+
+    @Benchmark
+    public Object beautify() {
+        try {
+            return ens.beautify(next());
+        } catch (InvalidLabelException err) {
+            return err;
+        }
+    }
+
+    @Benchmark
+    public Object normalizeDetails() {
+        try {
+            return ens.normalizeDetails(next());
+        } catch (InvalidLabelException err) {
+            return err;
+        }
+    }
+
+    @Benchmark
+    public Object split() {
+        return ens.split(next());
+    }
+
+}
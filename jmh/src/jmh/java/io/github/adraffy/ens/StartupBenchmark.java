@@ -0,0 +1,73 @@
+package io.github.adraffy.ens;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// single-shot: each fork measures a cold jvm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    // note: ENSNormalize.class does not trigger initialization
+    byte[] nfBytes;
+    byte[] specBytes;
+    byte[] snapshotBytes;
+    int hash;
+    NF nf;
+
+    @Setup
+    public void setup() {
+        nfBytes = Corpus.readBytes("/nf.bin");
+        specBytes = Corpus.readBytes("/spec.bin");
+        snapshotBytes = Corpus.readBytes("/snapshot.bin");
+        hash = Snapshot.hash(nfBytes, specBytes);
+        nf = new NF(decoder(nfBytes));
+    }
+
+    static Decoder decoder(byte[] v) {
+        return new Decoder(ByteBuffer.wrap(v).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+    }
+
+    // resource loading + decoding + derivation
+    @Benchmark
+    public ENSIP15 classInit() {
+        return ENSNormalize.ENSIP15;
+    }
+
+    @Benchmark
+    public NF decodeNF() {
+        return new NF(decoder(nfBytes));
+    }
+
+    // derived tables computed from scratch
+    @Benchmark
+    public ENSIP15 decodeENSIP15() {
+        ENSIP15 ens = new ENSIP15(nf, decoder(specBytes));
+        ens.derived();
+        return ens;
+    }
+
+    // derived tables loaded from snapshot.bin
+    @Benchmark
+    public ENSIP15 decodeENSIP15Snapshot() {
+        ENSIP15 ens = new ENSIP15(nf, decoder(specBytes), Snapshot.read(snapshotBytes, hash));
+        ens.derived();
+        return ens;
+    }
+
+}
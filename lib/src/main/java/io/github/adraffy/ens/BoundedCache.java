@@ -0,0 +1,211 @@
+package io.github.adraffy.ens;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// striped, weight-bounded cache
+// each segment is lru-ordered with frequency-based admission (TinyLFU):
+// when full, a new entry replaces the lru victims only if it was requested more often than each of them
+final class BoundedCache<K,V> {
+    
+    interface Weigher<K,V> {
+        long weigh(K key, V value);
+    }
+    
+    static int spread(int h) {
+        return (h ^ (h >>> 16)) * 0x45D9F3B;
+    }
+    
+    static int ceilPow2(long x) {
+        return x <= 1 ? 1 : (int)Math.min(1 << 30, Long.highestOneBit(x - 1) << 1);
+    }
+    
+    final Segment<K,V>[] segments;
+    final Weigher<K,V> weigher;
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    
+    @SuppressWarnings("unchecked")
+    static <K,V> Segment<K,V>[] newSegments(int n) {
+        return (Segment<K,V>[])new Segment<?,?>[n];
+    }
+    
+    // expected: approximate number of entries at maxWeight
+    BoundedCache(long maxWeight, long expected, Weigher<K,V> weigher) {
+        this.weigher = weigher;
+        int n = Math.min(ceilPow2(Runtime.getRuntime().availableProcessors() << 2), ceilPow2(Math.max(1, expected >> 4)));
+        segments = newSegments(n);
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment<>(maxWeight / n, Math.max(1, expected / n));
+        }
+    }
+    
+    private Segment<K,V> segment(int h) {
+        return segments[h & (segments.length - 1)];
+    }
+    
+    // key only needs equals() compatible with stored keys
+    V get(Object key) {
+        int h = spread(key.hashCode());
+        V value = segment(h).get(key, h);
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+    
+    void put(K key, V value) {
+        int h = spread(key.hashCode());
+        evictions.add(segment(h).put(key, value, weigher.weigh(key, value), h));
+    }
+    
+    void clear() {
+        for (Segment<K,V> s: segments) s.clear();
+    }
+    
+    long size() {
+        long n = 0;
+        for (Segment<K,V> s: segments) n += s.size();
+        return n;
+    }
+    
+    long weight() {
+        long n = 0;
+        for (Segment<K,V> s: segments) n += s.weight();
+        return n;
+    }
+    
+    static final class Node<V> {
+        final V value;
+        final long weight;
+        Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+    
+    static final class Segment<K,V> {
+        
+        final LinkedHashMap<K,Node<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+        final FrequencySketch sketch;
+        final long maxWeight;
+        long weight;
+        
+        Segment(long maxWeight, long expected) {
+            this.maxWeight = maxWeight;
+            sketch = new FrequencySketch(expected);
+        }
+        
+        synchronized V get(Object key, int h) {
+            sketch.increment(h);
+            Node<V> node = map.get(key);
+            return node == null ? null : node.value;
+        }
+        
+        // returns number of evictions
+        synchronized int put(K key, V value, long w, int h) {
+            if (w > maxWeight) return 0;
+            int evicted = 0;
+            Node<V> prev = map.get(key); // now mru
+            if (prev != null) {
+                // update in place: already admitted
+                map.put(key, new Node<>(value, w));
+                weight += w - prev.weight;
+                Iterator<Node<V>> it = map.values().iterator();
+                while (weight > maxWeight) {
+                    weight -= it.next().weight; // lru, never key since w <= maxWeight
+                    it.remove();
+                    evicted++;
+                }
+                return evicted;
+            }
+            if (weight + w > maxWeight) {
+                // all-or-nothing: find the lru victims that make room before removing any
+                int freq = sketch.frequency(h);
+                int victims = 0;
+                long free = maxWeight - weight;
+                for (Map.Entry<K,Node<V>> victim: map.entrySet()) { // lru first
+                    if (sketch.frequency(spread(victim.getKey().hashCode())) > freq) {
+                        return 0; // reject candidate
+                    }
+                    free += victim.getValue().weight;
+                    victims++;
+                    if (free >= w) break;
+                }
+                Iterator<Node<V>> it = map.values().iterator();
+                for (; evicted < victims; evicted++) {
+                    weight -= it.next().weight;
+                    it.remove();
+                }
+            }
+            map.put(key, new Node<>(value, w));
+            weight += w;
+            return evicted;
+        }
+        
+        synchronized void clear() {
+            map.clear();
+            weight = 0;
+        }
+        
+        synchronized int size() {
+            return map.size();
+        }
+        
+        synchronized long weight() {
+            return weight;
+        }
+    
+    }
+    
+    // count-min sketch of 4-bit counters (depth 4)
+    // counters are halved periodically so old popularity decays
+    static final class FrequencySketch {
+        
+        static final int[] SEEDS = { 0x97CB3127, 0xB8B34B2D, 0xE6A4B2A5, 0xCC9E2D51 };
+        
+        final byte[] table;
+        final int shift;
+        final int sampleSize;
+        int additions;
+        
+        FrequencySketch(long expected) {
+            int width = Math.max(16, ceilPow2(expected));
+            table = new byte[width * SEEDS.length];
+            shift = 32 - Integer.numberOfTrailingZeros(width);
+            sampleSize = (int)Math.min(Integer.MAX_VALUE, 10L * width);
+        }
+        
+        private int index(int h, int i) {
+            return (i << (32 - shift)) | ((h * SEEDS[i]) >>> shift);
+        }
+        
+        int frequency(int h) {
+            int min = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                min = Math.min(min, table[index(h, i)]);
+            }
+            return min;
+        }
+        
+        void increment(int h) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int j = index(h, i);
+                if (table[j] < 15) {
+                    table[j]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] >>= 1;
+                }
+                additions >>= 1;
+            }
+        }
+    
+    }
+
+}
@@ -0,0 +1,360 @@
+package io.github.adraffy.ens;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// bulk normalization of a newline-delimited UTF-8 file (one name per line)
+// the input is memory-mapped in chunks that are normalized in parallel
+// output is one row per line, in input order:
+// input, normalized, beautified, group, error kind, error position (utf-16 offset of the invalid label)
+// lines that are not UTF-8 are "invalid utf8" at the label containing the bad bytes
+// java -jar ens-normalize.jar [--jsonl] [--threads N] [--chunk BYTES] input [output]
+public class BulkNormalizer {
+    
+    static public final int DEFAULT_CHUNK = 1 << 22;
+    
+    public final ENSIP15 spec;
+    final boolean jsonl;
+    final int threads;
+    final int chunkSize;
+    final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+    
+    public BulkNormalizer(ENSIP15 ens, boolean jsonl, int threads, int chunkSize) {
+        if (threads < 1) throw new IllegalArgumentException("threads");
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize");
+        spec = ens;
+        this.jsonl = jsonl;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+    
+    static public final class Summary {
+        public final long names;
+        public final long invalid;
+        public final long nanos;
+        Summary(long names, long invalid, long nanos) {
+            this.names = names;
+            this.invalid = invalid;
+            this.nanos = nanos;
+        }
+        public double namesPerSecond() {
+            return nanos == 0 ? 0 : names * 1e9 / nanos;
+        }
+        @Override
+        public String toString() {
+            return String.format("%d names (%d invalid) in %.3fs: %.0f names/s", names, invalid, nanos / 1e9, namesPerSecond());
+        }
+    }
+    
+    // rows of one chunk
+    static final class Chunk {
+        final ByteBuffer output;
+        final int names;
+        final int invalid;
+        Chunk(ByteBuffer output, int names, int invalid) {
+            this.output = output;
+            this.names = names;
+            this.invalid = invalid;
+        }
+    }
+    
+    // per-thread state
+    final class Worker {
+        final NormalizerContext ctx = new NormalizerContext();
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        final HashSet<Group> groups = new HashSet<>();
+        final HashSet<EmojiSequence> emojis = new HashSet<>();
+        final StringBuilder line = new StringBuilder();
+        final StringBuilder pretty = new StringBuilder(); // beautified, built alongside the normalized output
+        final ENSIP15.LabelNormalizer details = (spec, ctx) -> {
+            if (!spec.validated(ctx)) return false;
+            groups.add(spec.detailsGroup(ctx, emojis));
+            beautify(ctx);
+            return true;
+        };
+        final StringBuilder out = new StringBuilder();
+        int invalid;
+        
+        Chunk process(ByteBuffer buf) throws CharacterCodingException {
+            out.setLength(0);
+            invalid = 0;
+            int names = 0;
+            for (int pos = 0, end = buf.limit(); pos < end; names++) {
+                int next = pos;
+                while (next < end && buf.get(next) != '\n') next++;
+                int e = next > pos && buf.get(next - 1) == '\r' ? next - 1 : next;
+                row(buf, pos, e);
+                pos = next + 1;
+            }
+            return new Chunk(encoder.encode(CharBuffer.wrap(out)), names, invalid);
+        }
+        
+        // appends the row of UTF-8 buf[a, b)
+        void row(ByteBuffer buf, int a, int b) {
+            // same strict decoding as ENSIP15.normalize(ByteBuffer)
+            ctx.start = a;
+            ctx.end = b;
+            NormError utf8 = spec.decodeUTF8(ctx, buf, a, b);
+            line.setLength(0);
+            int label = 0; // utf-16 start of the current label
+            for (int i = 0; i < ctx.input.count; i++) {
+                int cp = ctx.input.array[i];
+                StringUtils.appendCodepoint(line, cp);
+                if (cp == ENSIP15.STOP_CH) label = line.length();
+            }
+            if (utf8 != null) {
+                invalid++;
+                ByteBuffer src = buf.duplicate();
+                src.limit(b).position(a);
+                write(StandardCharsets.UTF_8.decode(src).toString(), null, null, null, utf8.kind, label);
+                return;
+            }
+            String name = line.toString();
+            String ascii = spec.normalizeASCII(name, ctx.sb);
+            if (ascii != null) {
+                write(name, ascii, ascii, name.isEmpty() ? "" : spec.ASCII.name, null, -1); // beautify is a no-op on ascii
+                return;
+            }
+            groups.clear();
+            emojis.clear();
+            pretty.setLength(0);
+            StringBuilder sb = ctx.sb;
+            sb.setLength(0);
+            if (!spec.transform(ctx, name, 0, name.length(), sb, false, e -> e.normalized.array, details)) {
+                invalid++;
+                write(name, null, null, null, ctx.error.kind, ctx.error.start);
+                return;
+            }
+            String normalized = sb.toString();
+            String group = spec.details(normalized, groups, emojis).groupDescription();
+            write(name, normalized, pretty.toString(), group, null, -1);
+        }
+        
+        // appends the beautified form of a validated label (see ENSIP15.beautified)
+        void beautify(NormalizerContext ctx) {
+            if (ctx.start > 0) pretty.append(ENSIP15.STOP_CH);
+            boolean greek = ctx.group == spec.GREEK;
+            for (int t = 0; t < ctx.tokenEnds.count; t++) {
+                EmojiSequence emoji = ctx.tokenEmojis.get(t);
+                if (emoji != null) {
+                    for (int cp: emoji.beautified.array) StringUtils.appendCodepoint(pretty, cp);
+                } else {
+                    for (int i = ctx.tokenStart(t), e = ctx.tokenEnds.array[t]; i < e; i++) {
+                        int cp = ctx.output.array[i];
+                        StringUtils.appendCodepoint(pretty, cp == 0x3BE && !greek ? 0x39E : cp);
+                    }
+                }
+            }
+        }
+        
+        void write(String input, String normalized, String beautified, String group, String error, int position) {
+            if (jsonl) {
+                out.append("{\"input\":");
+                appendJSON(out, input);
+                out.append(",\"normalized\":");
+                appendJSON(out, normalized);
+                out.append(",\"beautified\":");
+                appendJSON(out, beautified);
+                out.append(",\"group\":");
+                appendJSON(out, group);
+                out.append(",\"error\":");
+                appendJSON(out, error);
+                out.append(",\"position\":");
+                if (position < 0) {
+                    out.append("null");
+                } else {
+                    out.append(position);
+                }
+                out.append("}\n");
+            } else {
+                appendTSV(out, input);
+                out.append('\t');
+                appendTSV(out, normalized);
+                out.append('\t');
+                appendTSV(out, beautified);
+                out.append('\t');
+                appendTSV(out, group);
+                out.append('\t');
+                appendTSV(out, error);
+                out.append('\t');
+                if (position >= 0) out.append(position);
+                out.append('\n');
+            }
+        }
+    
+    }
+    
+    // null is empty
+    static void appendTSV(StringBuilder sb, String s) {
+        if (s == null) return;
+        for (int i = 0, e = s.length(); i < e; i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\\': sb.append("\\\\"); break;
+                default: sb.append(ch);
+            }
+        }
+    }
+    
+    static void appendJSON(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0, e = s.length(); i < e; i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default: {
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04X", (int)ch));
+                    } else {
+                        sb.append(ch);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+    
+    // reads input, writes rows to out (not closed)
+    public Summary run(Path input, WritableByteChannel out) throws IOException {
+        long t0 = System.nanoTime();
+        long names = 0;
+        long invalid = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "BulkNormalizer");
+            t.setDaemon(true);
+            return t;
+        });
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            int window = threads << 2; // chunks in flight
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            long size = in.size();
+            for (long pos = 0; pos < size; ) {
+                long end = nextLine(in, Math.min(size, pos + chunkSize), size, probe);
+                if (end - pos > Integer.MAX_VALUE) throw new IOException("line too long");
+                ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, pos, end - pos);
+                pending.add(executor.submit(() -> workers.get().process(buf)));
+                pos = end;
+                while (pending.size() >= window) {
+                    Chunk chunk = drain(pending.poll(), out);
+                    names += chunk.names;
+                    invalid += chunk.invalid;
+                }
+            }
+            while (!pending.isEmpty()) {
+                Chunk chunk = drain(pending.poll(), out);
+                names += chunk.names;
+                invalid += chunk.invalid;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Summary(names, invalid, System.nanoTime() - t0);
+    }
+    
+    // position after the newline at or after pos (or size)
+    static long nextLine(FileChannel in, long pos, long size, ByteBuffer probe) throws IOException {
+        while (pos < size) {
+            probe.clear();
+            int n = in.read(probe, pos);
+            if (n < 0) break;
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+    
+    static Chunk drain(Future<Chunk> future, WritableByteChannel out) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new IOException(err);
+        } catch (ExecutionException err) {
+            throw new IOException(err.getCause());
+        }
+        while (chunk.output.hasRemaining()) out.write(chunk.output);
+        return chunk;
+    }
+    
+    static void usage() {
+        System.err.println("usage: [--jsonl] [--threads N] [--chunk BYTES] input [output]");
+        System.err.println("rows: input, normalized, beautified, group, error, position (tsv or jsonl)");
+        System.exit(1);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        boolean jsonl = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunk = DEFAULT_CHUNK;
+        Path input = null;
+        Path output = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                switch (arg) {
+                    case "--jsonl": jsonl = true; continue;
+                    case "--tsv": jsonl = false; continue;
+                    case "--threads": threads = Integer.parseInt(args[++i]); continue;
+                    case "--chunk": chunk = Integer.parseInt(args[++i]); continue;
+                }
+            } catch (RuntimeException err) {
+                usage();
+            }
+            if (arg.startsWith("--")) {
+                usage();
+            } else if (input == null) {
+                input = Paths.get(arg);
+            } else if (output == null) {
+                output = Paths.get(arg);
+            } else {
+                usage();
+            }
+        }
+        if (input == null || threads < 1 || chunk < 1) usage();
+        BulkNormalizer bulk = new BulkNormalizer(ENSNormalize.ENSIP15, jsonl, threads, chunk);
+        ENSNormalize.warmup();
+        Summary summary;
+        if (output != null) {
+            try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                summary = bulk.run(input, out);
+            }
+        } else {
+            WritableByteChannel out = Channels.newChannel(System.out);
+            summary = bulk.run(input, out);
+            System.out.flush();
+        }
+        System.err.println(summary);
+    }
+
+}
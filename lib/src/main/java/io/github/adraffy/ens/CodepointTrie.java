@@ -0,0 +1,76 @@
+package io.github.adraffy.ens;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// two-stage lookup: codepoint -> int (default 0)
+// identical blocks are shared
+final class CodepointTrie {
+    
+    static final int SHIFT = 8;
+    static final int BLOCK = 1 << SHIFT;
+    static final int MASK = BLOCK - 1;
+    static final int BLOCKS = 0x110000 >> SHIFT;
+    
+    final char[] index; // block start / BLOCK
+    final int[] data;
+    
+    CodepointTrie(char[] index, int[] data) {
+        this.index = index;
+        this.data = data;
+    }
+    
+    int get(int cp) {
+        int i = cp >>> SHIFT;
+        return i < BLOCKS ? data[(index[i] << SHIFT) | (cp & MASK)] : 0;
+    }
+    
+    static final class Builder {
+        
+        final int[][] blocks = new int[BLOCKS][];
+        
+        int get(int cp) {
+            int[] block = blocks[cp >>> SHIFT];
+            return block == null ? 0 : block[cp & MASK];
+        }
+        
+        void set(int cp, int value) {
+            int i = cp >>> SHIFT;
+            int[] block = blocks[i];
+            if (block == null) {
+                if (value == 0) return;
+                blocks[i] = block = new int[BLOCK];
+            }
+            block[cp & MASK] = value;
+        }
+        
+        void or(int cp, int bits) {
+            set(cp, get(cp) | bits);
+        }
+        
+        CodepointTrie build() {
+            HashMap<IntBuffer,Integer> unique = new HashMap<>();
+            int[] empty = new int[BLOCK];
+            unique.put(IntBuffer.wrap(empty), 0);
+            int[] data = empty;
+            char[] index = new char[BLOCKS];
+            for (int i = 0; i < BLOCKS; i++) {
+                int[] block = blocks[i];
+                if (block == null) continue;
+                IntBuffer key = IntBuffer.wrap(block);
+                Integer id = unique.get(key);
+                if (id == null) {
+                    id = unique.size();
+                    unique.put(key, id);
+                    data = Arrays.copyOf(data, data.length + BLOCK);
+                    System.arraycopy(block, 0, data, id << SHIFT, BLOCK);
+                }
+                index[i] = (char)(int)id;
+            }
+            return new CodepointTrie(index, data);
+        }
+        
+    }
+    
+}
@@ -5,10 +5,10 @@ public class ConfusableException extends NormException {
     public final Group group;
     public final Group other;
     
-    ConfusableException(Group group, Group other) {
-        super(ENSIP15.WHOLE_CONFUSABLE, String.format("%s/%s", group, other));
-        this.group = group;
-        this.other = other;
+    ConfusableException(NormError error) {
+        super(error);
+        this.group = error.group;
+        this.other = error.other;
     }      
     
 }
@@ -4,9 +4,9 @@ public class DisallowedCharacterException extends NormException {
     
     public final int cp;
     
-    DisallowedCharacterException(String reason, int cp) {
-        super(ENSIP15.DISALLOWED_CHARACTER, reason);
-        this.cp = cp;
+    DisallowedCharacterException(NormError error) {
+        super(error);
+        this.cp = error.cp;
     }
     
 }
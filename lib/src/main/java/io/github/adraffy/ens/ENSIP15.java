@@ -1,19 +1,29 @@
 package io.github.adraffy.ens;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.IntConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class ENSIP15 {
- 
+    
     // error kinds
     static public final String DISALLOWED_CHARACTER = "disallowed character";
     static public final String ILLEGAL_MIXTURE = "illegal mixture";
@@ -28,9 +38,12 @@ public class ENSIP15 {
     static public final String FENCED_TRAILING = "trailing fenced";
     static public final String INVALID_LABEL_EXTENSION = "invalid label extension";
     static public final String INVALID_UNDERSCORE = "underscore allowed only at start";
+    static public final String INVALID_UTF8 = "invalid utf8"; // byte inputs only
     
     static public final char STOP_CH = '.';
     
+    static final int BATCH_CHUNK = 256; // names per task
+    
     public final NF NF;
     public final int maxNonSpacingMarks;
     public final ReadOnlyIntSet shouldEscape;
@@ -45,14 +58,84 @@ public class ENSIP15 {
     public final List<EmojiSequence> emojis;
     public final List<Whole> wholes;
     
-    final HashMap<Integer,Whole> confusables = new HashMap<>();
-    final EmojiNode emojiRoot = new EmojiNode();
+    final char[] asciiMapped = new char[0x80]; // 0 = requires full pipeline
     final Group LATIN, GREEK, ASCII, EMOJI;
-
+    final boolean fromSnapshot;
+    
+    static final int UNIQUE = -1; // non-confusable and belongs to a single group
+    
+    // codepoint properties: props.get(cp)
+    static final int P_VALID = 1;
+    static final int P_IGNORED = 2;
+    static final int P_MAPPED = 4;
+    static final int P_CM = 8;
+    static final int P_NSM = 16;
+    static final int P_FENCED = 32;
+    static final int P_ESCAPE = 64;
+    static final int P_CONFUSABLE = 128;
+    static final int P_NFC_CHECK = 256; // valid: may change under NFC, mapped: replacement may
+    static final int P_MAPPING_SHIFT = 9; // mapped: mappings[props >>> P_MAPPING_SHIFT] = { length, cps... }
+    
+    // group membership: groupBits.get(cp) = pattern offset << GROUP_SHIFT | (first primary group + 1)
+    // groupPatterns[offset, offset + groupWords) = bitset of groups containing cp
+    static final int GROUP_SHIFT = 9;
+    static final int GROUP_PRIMARY = (1 << GROUP_SHIFT) - 1;
+    
+    // deduplicated group bitsets of fixed width
+    static final class GroupPatterns {
+        final int words;
+        final HashMap<LongBuffer,Integer> offsets = new HashMap<>();
+        long[] pool = new long[0];
+        GroupPatterns(int words) {
+            this.words = words;
+        }
+        int add(long[] bits) {
+            Integer off = offsets.get(LongBuffer.wrap(bits));
+            if (off == null) {
+                off = pool.length;
+                offsets.put(LongBuffer.wrap(bits.clone()), off);
+                pool = Arrays.copyOf(pool, off + words);
+                System.arraycopy(bits, 0, pool, off, words);
+            }
+            return off;
+        }
+    }
+    
+    // tiered initialization:
+    // the constructor builds what the ascii fast path needs
+    // everything else is built on first use (or by ENSNormalize.warmup)
+    private volatile Derived derived;
+    private Snapshot snapshot; // remaining tables, released once derived
+    private volatile NormMetrics metrics; // null if disabled
+    
+    static final class Derived {
+        final CodepointTrie props; // cp -> P_* bits
+        final int[] mappings;
+        final CodepointTrie groupBits;
+        final long[] groupPatterns;
+        final int groupWords;
+        final CodepointTrie confusables; // cp -> complement offset + 1 | UNIQUE | 0 (shared)
+        final EmojiAutomaton emojiAutomaton;
+        Derived(CodepointTrie props, int[] mappings, CodepointTrie groupBits, long[] groupPatterns, int groupWords, CodepointTrie confusables, EmojiAutomaton emojiAutomaton) {
+            this.props = props;
+            this.mappings = mappings;
+            this.groupBits = groupBits;
+            this.groupPatterns = groupPatterns;
+            this.groupWords = groupWords;
+            this.confusables = confusables;
+            this.emojiAutomaton = emojiAutomaton;
+        }
+    }
+    
     // experimental    
     private final String[] POSSIBLY_CONFUSING = {"ą", "ç", "ę", "ş", "ì", "í", "î", "ï", "ǐ", "ł"};
     
     ENSIP15(NF NF, Decoder dec) {
+        this(NF, dec, null);
+    }
+    
+    // snapshot: precomputed tables (optional)
+    ENSIP15(NF NF, Decoder dec, Snapshot snapshot) {
         this.NF = NF;
         shouldEscape = ReadOnlyIntSet.fromOwnedUnsorted(dec.readUnique());
         ignored = ReadOnlyIntSet.fromOwnedUnsorted(dec.readUnique());
@@ -64,96 +147,250 @@ public class ENSIP15 {
         mapped = Collections.unmodifiableMap(decodeMapped(dec));
         groups = Collections.unmodifiableList(decodeGroups(dec));
         emojis = Collections.unmodifiableList(dec.readTree(cps -> new EmojiSequence(cps)));
-        
-        // precompute: confusable-extent complements
         wholes = Collections.unmodifiableList(decodeWholes(dec));
         
-        // precompute: emoji trie
+        // precompute: possibly valid
+        fromSnapshot = snapshot != null;
+        if (fromSnapshot) {
+            // same order as snapshotTables()
+            possiblyValid = new ReadOnlyIntSet(Snapshot.fromRanges(snapshot.next()));
+            this.snapshot = snapshot;
+        } else {
+            byte[] member = groupMembership();
+            IntList union = new IntList();
+            for (int cp = 0; cp < member.length; cp++) {
+                if (member[cp] != 0) union.add(cp);
+            }
+            HashSet<Integer> valid = new HashSet<>();
+            union.stream().forEach(valid::add);
+            for (int cp: NF.NFD(union.toArray())) valid.add(cp);
+            possiblyValid = ReadOnlyIntSet.fromOwnedUnsorted(valid.stream().mapToInt(x -> x).toArray());
+        }
+        
+        // precompute: special groups
+        LATIN = groups.stream().filter(g -> g.name.equals("Latin")).findFirst().get();
+        GREEK = groups.stream().filter(g -> g.name.equals("Greek")).findFirst().get();
+        int asciiEnd = -1 - Arrays.binarySearch(possiblyValid.array, 0x80); // not valid
+        ASCII = new Group(-1, GroupKind.ASCII, "ASCII", false, new ReadOnlyIntSet(Arrays.copyOf(possiblyValid.array, asciiEnd)), ReadOnlyIntSet.EMPTY);
+        EMOJI = new Group(-1, GroupKind.Emoji, "Emoji", false, ReadOnlyIntSet.EMPTY, ReadOnlyIntSet.EMPTY);
+        
+        // precompute: ascii fast path
+        boolean[] asciiEmoji = new boolean[0x80]; // cannot be tokenized as text
         for (EmojiSequence emoji: emojis) {
-            ArrayList<EmojiNode> nodes = new ArrayList<>();
-            nodes.add(emojiRoot);
-            for (int cp: emoji.beautified.array) {
-                if (cp == 0xFE0F) {
-                    for (int i = 0, e = nodes.size(); i < e; i++) {
-                        nodes.add(nodes.get(i).then(cp));
-                    }
-                } else {
-                    for (int i = 0, e = nodes.size(); i < e; i++) {
-                        nodes.set(i, nodes.get(i).then(cp));
-                    }
-                }
+            if (emoji.normalized.stream().allMatch(cp -> cp < 0x80)) {
+                emoji.normalized.stream().forEach(cp -> asciiEmoji[cp] = true);
             }
-            for (EmojiNode x: nodes) {
-                x.emoji = emoji;
+        }
+        for (int cp = 0; cp < 0x80; cp++) {
+            if (cp == STOP_CH || asciiEmoji[cp]) continue;
+            if (possiblyValid.contains(cp)) {
+                asciiMapped[cp] = (char)cp;
+            } else {
+                ReadOnlyIntList replace = mapped.get(cp);
+                if (replace != null && replace.size() == 1 && replace.get(0) < 0x80) {
+                    asciiMapped[cp] = (char)replace.get(0);
+                }
             }
         }
-        
-        // precompute: possibly valid
-        HashSet<Integer> union = new HashSet<>();
-        HashSet<Integer> multi = new HashSet<>();
+    }
+    
+    // cp -> number of groups containing it (saturates at 2)
+    private byte[] groupMembership() {
+        byte[] member = new byte[0x110000];
         for (Group g: groups) {
             IntStream.concat(g.primary.stream(), g.secondary.stream()).forEach(cp -> {
-                if (union.contains(cp)) {
-                    multi.add(cp);
-                } else {
-                    union.add(cp);
-                }
+                if (member[cp] < 2) member[cp]++;
             });
         }
-        HashSet<Integer> valid = new HashSet<>(union);
-        for (int cp: NF.NFD(union.stream().mapToInt(x -> x).toArray())) valid.add(cp);
-        possiblyValid = ReadOnlyIntSet.fromOwnedUnsorted(valid.stream().mapToInt(x -> x).toArray());
-                
-        // precompute: unique non-confusables
-        HashSet<Integer> unique = new HashSet<>(union);
-        unique.removeAll(multi);
-        unique.removeAll(confusables.keySet());
-        for (Integer cp: unique) confusables.put(cp, Whole.UNIQUE_PH); // stay boxed
-        
-         // precompute: special groups
-        LATIN = groups.stream().filter(g -> g.name.equals("Latin")).findFirst().get();
-        GREEK = groups.stream().filter(g -> g.name.equals("Greek")).findFirst().get();
-        ASCII = new Group(-1, GroupKind.ASCII, "ASCII", false, ReadOnlyIntSet.fromOwnedUnsorted(possiblyValid.stream().filter(cp -> cp < 0x80).toArray()), ReadOnlyIntSet.EMPTY);
-        EMOJI = new Group(-1, GroupKind.Emoji, "Emoji", false, ReadOnlyIntSet.EMPTY, ReadOnlyIntSet.EMPTY);
+        return member;
     }
     
-    private ArrayList<Whole> decodeWholes(Decoder dec) {
-        class Extent {
-            final HashSet<Group> groups = new HashSet<>();
-            final ArrayList<Integer> cps = new ArrayList<>();
+    boolean isDerived() {
+        return derived != null;
+    }
+    
+    // observe every label processed by this instance (null to disable)
+    public void setMetrics(NormMetrics m) {
+        metrics = m;
+    }
+    
+    public NormMetrics getMetrics() {
+        return metrics;
+    }
+    
+    Derived derived() {
+        Derived d = derived;
+        if (d == null) {
+            synchronized (this) {
+                d = derived;
+                if (d == null) {
+                    derived = d = buildDerived();
+                    snapshot = null;
+                }
+            }
+        }
+        return d;
+    }
+    
+    private Derived buildDerived() {
+        int words = (groups.size() + 63) >>> 6;
+        EmojiAutomaton emojiAutomaton;
+        CodepointTrie props;
+        int[] mappings;
+        CodepointTrie groupBits;
+        long[] groupPatterns;
+        CodepointTrie confusables;
+        if (snapshot != null) {
+            long[] starts = Snapshot.join(snapshot.next());
+            int[] edges = snapshot.next();
+            int[] edgeCps = snapshot.next();
+            int[] edgeStates = snapshot.next();
+            int[] accepts = snapshot.next();
+            EmojiSequence[] accept = new EmojiSequence[accepts.length];
+            for (int i = 0; i < accepts.length; i++) {
+                if (accepts[i] >= 0) accept[i] = emojis.get(accepts[i]);
+            }
+            emojiAutomaton = new EmojiAutomaton(starts, edges, edgeCps, edgeStates, accept);
+            props = new CodepointTrie(Snapshot.narrow(snapshot.next()), snapshot.next());
+            mappings = snapshot.next();
+            groupBits = new CodepointTrie(Snapshot.narrow(snapshot.next()), snapshot.next());
+            confusables = new CodepointTrie(Snapshot.narrow(snapshot.next()), snapshot.next());
+            groupPatterns = Snapshot.join(snapshot.next());
+        } else {
+            // precompute: emoji automaton
+            emojiAutomaton = EmojiAutomaton.build(emojis);
+            
+            // precompute: codepoint properties
+            CodepointTrie.Builder builder = new CodepointTrie.Builder();
+            for (int cp: possiblyValid.array) builder.or(cp, P_VALID);
+            for (int cp: ignored.array) builder.or(cp, P_IGNORED);
+            for (int cp: combiningMarks.array) builder.or(cp, P_CM);
+            for (int cp: nonSpacingMarks.array) builder.or(cp, P_NSM);
+            for (int cp: fenced.keySet()) builder.or(cp, P_FENCED);
+            for (int cp: shouldEscape.array) builder.or(cp, P_ESCAPE);
+            for (Whole w: wholes) {
+                for (int cp: w.confused.array) builder.or(cp, P_CONFUSABLE);
+            }
+            for (int cp: NFCCheck.array) builder.or(cp, P_NFC_CHECK);
+            IntList pool = new IntList();
+            for (Map.Entry<Integer,ReadOnlyIntList> e: mapped.entrySet()) {
+                int flags = P_MAPPED | (pool.count << P_MAPPING_SHIFT);
+                if (Arrays.stream(e.getValue().array).anyMatch(NFCCheck::contains)) flags |= P_NFC_CHECK;
+                builder.or(e.getKey(), flags);
+                pool.add(e.getValue().size());
+                pool.add(e.getValue().array);
+            }
+            props = builder.build();
+            mappings = pool.toArray();
+            
+            // precompute: group membership
+            if (groups.size() >= GROUP_PRIMARY) throw new IllegalStateException("too many groups");
+            GroupPatterns patterns = new GroupPatterns(words);
+            long[] pairs = new long[groups.stream().mapToInt(g -> g.primary.size() + g.secondary.size()).sum()];
+            int n = 0;
+            for (Group g: groups) {
+                for (int cp: g.primary.array) pairs[n++] = (long)cp << 10 | g.index << 1;
+                for (int cp: g.secondary.array) pairs[n++] = (long)cp << 10 | g.index << 1 | 1;
+            }
+            Arrays.sort(pairs); // by cp, then group
+            builder = new CodepointTrie.Builder();
+            long[] bits = new long[words];
+            for (int i = 0; i < n; ) {
+                int cp = (int)(pairs[i] >>> 10);
+                int primary = -1;
+                Arrays.fill(bits, 0);
+                for (; i < n && (int)(pairs[i] >>> 10) == cp; i++) {
+                    int g = (int)(pairs[i] >>> 1) & GROUP_PRIMARY;
+                    bits[g >>> 6] |= 1L << g;
+                    if (primary < 0 && (pairs[i] & 1) == 0) primary = g;
+                }
+                builder.set(cp, patterns.add(bits) << GROUP_SHIFT | (primary + 1));
+            }
+            groupBits = builder.build();
+            
+            // precompute: confusable-extent complements
+            builder = new CodepointTrie.Builder();
+            for (Whole w: wholes) {
+                computeComplements(w, builder, patterns);
+            }
+            
+            // precompute: unique non-confusables
+            byte[] member = groupMembership();
+            for (int cp = 0; cp < member.length; cp++) {
+                if (member[cp] == 1 && builder.get(cp) == 0) {
+                    builder.set(cp, UNIQUE);
+                }
+            }
+            confusables = builder.build();
+            groupPatterns = patterns.pool;
+        }
+        return new Derived(props, mappings, groupBits, groupPatterns, words, confusables, emojiAutomaton);
+    }
+    
+    // see: Snapshot
+    int[][] snapshotTables() {
+        Derived d = derived();
+        EmojiAutomaton emojiAutomaton = d.emojiAutomaton;
+        IdentityHashMap<EmojiSequence,Integer> emojiIndex = new IdentityHashMap<>();
+        for (int i = 0, e = emojis.size(); i < e; i++) {
+            emojiIndex.put(emojis.get(i), i);
         }
+        int[] accepts = Arrays.stream(emojiAutomaton.accept).mapToInt(x -> x == null ? -1 : emojiIndex.get(x)).toArray();
+        return new int[][]{
+            Snapshot.toRanges(possiblyValid.array),
+            Snapshot.split(emojiAutomaton.starts), emojiAutomaton.edges, emojiAutomaton.edgeCps, emojiAutomaton.edgeStates, accepts,
+            Snapshot.widen(d.props.index), d.props.data, d.mappings,
+            Snapshot.widen(d.groupBits.index), d.groupBits.data,
+            Snapshot.widen(d.confusables.index), d.confusables.data,
+            Snapshot.split(d.groupPatterns)
+        };
+    }
+    
+    static ArrayList<Whole> decodeWholes(Decoder dec) {
         ArrayList<Whole> ret = new ArrayList<>();
         while (true) {
             int[] confused = dec.readUnique();
             if (confused.length == 0) break;
             int[] valid = dec.readUnique();
-            Whole w = new Whole(ReadOnlyIntSet.fromOwnedUnsorted(valid), ReadOnlyIntSet.fromOwnedUnsorted(confused));
-            for (int cp: confused) confusables.put(cp, w);
-            HashSet<Group> cover = new HashSet<>();
-            ArrayList<Extent> extents = new ArrayList<>();
-            IntConsumer fn = cp -> {
-                List<Group> gs = groups.stream().filter(g -> g.contains(cp)).collect(Collectors.toList());
-                Extent extent = extents.stream().filter(e -> gs.stream().anyMatch(g -> e.groups.contains(g))).findFirst().orElseGet(() -> {
-                    Extent temp = new Extent();
-                    extents.add(temp);
-                    return temp;
-                });
-                extent.cps.add(cp);
-                extent.groups.addAll(gs);
-                cover.addAll(gs);
-            };
-            for (int cp: valid) fn.accept(cp);
-            for (int cp: confused) fn.accept(cp);
-            for (Extent extent: extents) {
-                int[] complement = cover.stream().filter(g -> !extent.groups.contains(g)).mapToInt(g -> g.index).sorted().toArray();
-                for (Integer cp: extent.cps) { // stay boxed
-                    w.complements.put(cp, complement);
-                }
-            }
+            ret.add(new Whole(ReadOnlyIntSet.fromOwnedUnsorted(valid), ReadOnlyIntSet.fromOwnedUnsorted(confused)));
         }
         return ret;
     }
     
+    // complement = groups covered by the whole but not by the extent of cp
+    private void computeComplements(Whole w, CodepointTrie.Builder confused, GroupPatterns patterns) {
+        class Extent {
+            final HashSet<Group> groups = new HashSet<>();
+            final ArrayList<Integer> cps = new ArrayList<>();
+        }
+        HashSet<Group> cover = new HashSet<>();
+        ArrayList<Extent> extents = new ArrayList<>();
+        IntConsumer fn = cp -> {
+            List<Group> gs = groups.stream().filter(g -> g.contains(cp)).collect(Collectors.toList());
+            Extent extent = extents.stream().filter(e -> gs.stream().anyMatch(g -> e.groups.contains(g))).findFirst().orElseGet(() -> {
+                Extent temp = new Extent();
+                extents.add(temp);
+                return temp;
+            });
+            extent.cps.add(cp);
+            extent.groups.addAll(gs);
+            cover.addAll(gs);
+        };
+        for (int cp: w.valid.array) fn.accept(cp);
+        for (int cp: w.confused.array) fn.accept(cp);
+        long[] bits = new long[patterns.words];
+        for (Extent extent: extents) {
+            Arrays.fill(bits, 0);
+            for (Group g: cover) {
+                if (!extent.groups.contains(g)) bits[g.index >>> 6] |= 1L << g.index;
+            }
+            int off = patterns.add(bits);
+            for (int cp: extent.cps) {
+                if (w.confused.contains(cp)) confused.set(cp, off + 1);
+            }
+        }
+    }
+    
     static HashMap<Integer,String> decodeNamedCodepoints(Decoder dec) {
         HashMap<Integer,String> ret = new HashMap<>();
         for (int cp: dec.readSortedAscending(dec.readUnsigned())) {
@@ -205,7 +442,7 @@ public class ENSIP15 {
     // otherwise: {HEX} 
     public String safeCodepoint(int cp) {
         StringBuilder sb = new StringBuilder();
-        if (!shouldEscape.contains(cp)) {
+        if ((derived().props.get(cp) & P_ESCAPE) == 0) {
             sb.append('"');
             safeImplode(sb, new int[]{ cp });
             sb.append('"');
@@ -223,11 +460,12 @@ public class ENSIP15 {
     
     public void safeImplode(StringBuilder sb, int[] cps) {
         if (cps.length == 0) return;
-        if (combiningMarks.contains(cps[0])) {
+        CodepointTrie props = derived().props;
+        if ((props.get(cps[0]) & P_CM) != 0) {
             StringUtils.appendCodepoint(sb, 0x25CC);
         }
         for (int cp: cps) {
-            if (shouldEscape.contains(cp)) {
+            if ((props.get(cp) & P_ESCAPE) != 0) {
                 appendHexEscape(sb, cp);
             } else {
                 StringUtils.appendCodepoint(sb, cp);
@@ -238,49 +476,150 @@ public class ENSIP15 {
         // https://www.w3.org/International/questions/qa-bidi-unicode-controls#exceptions
         StringUtils.appendCodepoint(sb, 0x200E);
     }
-        
-    static int[] flatten(List<OutputToken> tokens) {
-        return tokens.stream().flatMapToInt(t -> t.stream()).toArray();
+    
+    // processes the tokenized label in ctx.output (in place)
+    // returns false and sets ctx.error if the label is invalid
+    interface LabelNormalizer {
+        boolean apply(ENSIP15 spec, NormalizerContext ctx);
+    }
+    
+    // the standard normalizers (only these use a LabelCache)
+    static final LabelNormalizer VALIDATED = ENSIP15::validated;
+    static final LabelNormalizer BEAUTIFIED = ENSIP15::beautified;
+    
+    boolean validated(NormalizerContext ctx) {
+        return checkValidLabel(ctx) == null;
+    }
+    
+    boolean beautified(NormalizerContext ctx) {
+        if (checkValidLabel(ctx) != null) return false;
+        if (ctx.group != GREEK) {
+            int[] v = ctx.output.array;
+            for (int i = 0, e = ctx.output.count; i < e; i++) {
+                if (v[i] == 0x3BE) v[i] = 0x39E;
+            }
+        }
+        return true;
     }
     
     public String normalize(String name) {
-        return transform(name, cps -> outputTokenize(cps, NF::NFC, e -> e.normalized.array), tokens -> {
-            int[] norm = flatten(tokens);
-            checkValidLabel(norm, tokens);
-            return norm;
-        });
+        String ascii = normalizeASCII(name);
+        if (ascii != null) return ascii;
+        return transform(new NormalizerContext(), name, e -> e.normalized.array, VALIDATED);
+    }
+    public String normalize(String name, NormalizerContext ctx) {
+        String ascii = normalizeASCII(name, ctx.sb);
+        if (ascii != null) return ascii;
+        return transform(ctx, name, e -> e.normalized.array, VALIDATED);
     }
     
     public String beautify(String name) {
-        return transform(name, cps -> outputTokenize(cps, NF::NFC, e -> e.beautified.array), tokens -> {
-            int[] norm = flatten(tokens);
-            Group group = checkValidLabel(norm, tokens);
-            if (group != GREEK) {
-                for (int i = 0, e = norm.length; i < e; i++) {
-                    if (norm[i] == 0x3BE) norm[i] = 0x39E;
-                }
-            }
-            return norm;
-        });        
+        String ascii = normalizeASCII(name); // beautify is a no-op on ascii
+        if (ascii != null) return ascii;
+        return transform(new NormalizerContext(), name, e -> e.beautified.array, BEAUTIFIED);
+    }
+    public String beautify(String name, NormalizerContext ctx) {
+        String beautified = tryBeautify(name, ctx);
+        if (beautified == null) throw ctx.error.toException();
+        return beautified;
+    }
+    
+    // returns null and sets ctx.error if invalid
+    String tryBeautify(String name, NormalizerContext ctx) {
+        String ascii = normalizeASCII(name, ctx.sb);
+        if (ascii != null) return ascii;
+        return tryTransform(ctx, name, e -> e.beautified.array, BEAUTIFIED);
+    }
+    
+    // never throws
+    public NormResult tryNormalize(String name) {
+        return tryNormalize(name, new NormalizerContext());
+    }
+    public NormResult tryNormalize(String name, NormalizerContext ctx) {
+        String ascii = normalizeASCII(name, ctx.sb);
+        if (ascii != null) return new NormResult(name, ascii, null);
+        StringBuilder sb = ctx.sb;
+        sb.setLength(0);
+        if (transform(ctx, name, 0, name.length(), sb, false, e -> e.normalized.array, VALIDATED)) {
+            return new NormResult(name, sb.toString(), null);
+        } else {
+            return new NormResult(name, null, ctx.error);
+        }
+    }
+    
+    // writes the normalized name[start, end) to out
+    // returns null if valid, otherwise the error (relative to name) and out is unchanged
+    public NormError normalize(CharSequence name, Appendable out) { return normalize(name, 0, name.length(), out); }
+    public NormError normalize(CharSequence name, int start, int end, Appendable out) {
+        return transform(name, start, end, out, e -> e.normalized.array, VALIDATED);
+    }
+    
+    // writes the beautified name[start, end) to out
+    // returns null if valid, otherwise the error (relative to name) and out is unchanged
+    public NormError beautify(CharSequence name, Appendable out) { return beautify(name, 0, name.length(), out); }
+    public NormError beautify(CharSequence name, int start, int end, Appendable out) {
+        return transform(name, start, end, out, e -> e.beautified.array, BEAUTIFIED); // beautify is a no-op on ascii
+    }
+    
+    // writes the normalized UTF-8 name[position, limit) to out
+    // returns null if valid, otherwise the error (byte offsets into name) and out is unchanged
+    // throws BufferOverflowException if out is too small (out is unchanged)
+    public NormError normalize(ByteBuffer name, ByteBuffer out) { return normalizeUTF8(name, name.position(), name.limit(), out); }
+    public NormError normalize(byte[] name, int start, int end, ByteBuffer out) { return normalizeUTF8(ByteBuffer.wrap(name), start, end, out); }
+    
+    // true if the UTF-8 name[position, limit) is valid and already normalized
+    // ascii is decided by a single scan
+    public boolean isNormalized(ByteBuffer name) { return isNormalizedUTF8(name, name.position(), name.limit()); }
+    public boolean isNormalized(byte[] name, int start, int end) { return isNormalizedUTF8(ByteBuffer.wrap(name), start, end); }
+    
+    // never throws
+    // returns null if valid
+    public NormError validate(String name) {
+        return validate(name, new NormalizerContext());
+    }
+    public NormError validate(String name, NormalizerContext ctx) {
+        if (scanASCII(name, 0, name.length()) != ASCII_NONE) return null;
+        return transform(ctx, name, 0, name.length(), null, false, e -> e.normalized.array, VALIDATED) ? null : ctx.error;
     }
     
     public NormDetails normalizeDetails(String name)  {
+        NormalizerContext ctx = new NormalizerContext();
+        NormDetails details = tryNormalizeDetails(name, ctx);
+        if (details == null) throw ctx.error.toException();
+        return details;
+    }
+    
+    // returns null and sets ctx.error if invalid
+    NormDetails tryNormalizeDetails(String name, NormalizerContext ctx) {
         HashSet<Group> groups = new HashSet<>();
         HashSet<EmojiSequence> emojis = new HashSet<>();
-        String normed = transform(name, cps -> outputTokenize(cps, NF::NFC, e -> e.normalized.array), tokens -> {
-            int[] norm = flatten(tokens);
-            Group group = checkValidLabel(norm, tokens);
-            for (OutputToken t: tokens) {
-                if (t.emoji != null) {
-                    emojis.add(t.emoji);
+        String normed = tryTransform(ctx, name, e -> e.normalized.array, (spec, c) -> {
+            if (!spec.validated(c)) return false;
+            groups.add(spec.detailsGroup(c, emojis));
+            return true;
+        });
+        return normed == null ? null : details(normed, groups, emojis);
+    }
+    
+    // group of a validated label (ASCII if LATIN and ascii text)
+    // collects its emoji
+    Group detailsGroup(NormalizerContext ctx, HashSet<EmojiSequence> emojis) {
+        boolean ascii = true;
+        for (int i = 0; i < ctx.tokenEnds.count; i++) {
+            EmojiSequence emoji = ctx.tokenEmojis.get(i);
+            if (emoji != null) {
+                emojis.add(emoji);
+            } else {
+                for (int j = ctx.tokenStart(i), e = ctx.tokenEnds.array[i]; j < e; j++) {
+                    if (ctx.output.array[j] >= 0x80) ascii = false;
                 }
             }
-            if (group == LATIN && tokens.stream().allMatch(t -> t.emoji != null || t.stream().allMatch(cp -> cp < 0x80))) {
-                group = ASCII;
-            }
-            groups.add(group);
-            return norm;
-        });
+        }
+        return ctx.group == LATIN && ascii ? ASCII : ctx.group;
+    }
+    
+    // groups: of each label
+    NormDetails details(String normed, HashSet<Group> groups, HashSet<EmojiSequence> emojis) {
         if (groups.contains(LATIN)) {
             groups.remove(ASCII);
         }
@@ -291,41 +630,427 @@ public class ENSIP15 {
         return new NormDetails(normed, groups, emojis, confusing);
     }
     
+    // never throws per name
+    public NormResult[] normalizeAll(List<String> names) {
+        return normalizeAll(names.toArray(new String[names.size()]));
+    }
+    public NormResult[] normalizeAll(String[] names) {
+        return normalizeAll(names, ForkJoinPool.commonPool());
+    }
+    public NormResult[] normalizeAll(List<String> names, Executor executor) {
+        return normalizeAll(names.toArray(new String[names.size()]), executor);
+    }
+    public NormResult[] normalizeAll(String[] names, Executor executor) {
+        NormResult[] results = new NormResult[names.length];
+        if (names.length <= BATCH_CHUNK) {
+            normalizeRange(names, results, 0, names.length);
+        } else if (executor instanceof ForkJoinPool) {
+            ((ForkJoinPool)executor).invoke(new BatchTask(names, results, 0, names.length));
+        } else {
+            int n = names.length;
+            int chunk = Math.max(BATCH_CHUNK, n / (Runtime.getRuntime().availableProcessors() << 2) + 1);
+            ArrayList<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i += chunk) {
+                int a = i;
+                int b = Math.min(n, i + chunk);
+                futures.add(CompletableFuture.runAsync(() -> normalizeRange(names, results, a, b), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+        }
+        return results;
+    }
+    
+    void normalizeRange(String[] names, NormResult[] results, int a, int b) {
+        NormalizerContext ctx = new NormalizerContext();
+        for (int i = a; i < b; i++) {
+            results[i] = tryNormalize(names[i], ctx);
+        }
+    }
+    
+    class BatchTask extends RecursiveAction {
+        final String[] names;
+        final NormResult[] results;
+        final int a, b;
+        BatchTask(String[] names, NormResult[] results, int a, int b) {
+            this.names = names;
+            this.results = results;
+            this.a = a;
+            this.b = b;
+        }
+        @Override
+        protected void compute() {
+            if (b - a <= BATCH_CHUNK) {
+                normalizeRange(names, results, a, b);
+            } else {
+                int mid = (a + b) >>> 1;
+                invokeAll(new BatchTask(names, results, a, mid), new BatchTask(names, results, mid, b));
+            }
+        }
+    }
+    
+    // namehash(normalize(name)) without intermediate strings
+    // throws InvalidLabelException
+    public byte[] namehash(String name) {
+        byte[][] labels = labelhashes(name);
+        byte[] node = new byte[32];
+        Keccak256 k = new Keccak256();
+        for (int i = labels.length - 1; i >= 0; i--) {
+            k.update(node, 0, 32);
+            k.update(labels[i], 0, 32);
+            k.digest(node, 0);
+        }
+        return node;
+    }
+    
+    // keccak256 of each normalized label (in order)
+    // labels are hashed as their codepoints are produced
+    // throws InvalidLabelException
+    public byte[][] labelhashes(String name) {
+        Keccak256 k = new Keccak256();
+        ArrayList<byte[]> hashes = new ArrayList<>();
+        int n = name.length();
+        if (scanASCII(name, 0, n) != ASCII_NONE) {
+            if (n > 0) {
+                for (int i = 0; i <= n; i++) {
+                    char ch = i < n ? name.charAt(i) : STOP_CH;
+                    if (ch == STOP_CH) {
+                        hashes.add(k.digest());
+                    } else {
+                        k.update(asciiMapped[ch]);
+                    }
+                }
+            }
+        } else {
+            NormalizerContext ctx = new NormalizerContext();
+            if (!transform(ctx, name, 0, n, null, false, e -> e.normalized.array, (spec, c) -> {
+                if (!spec.validated(c)) return false;
+                for (int i = 0; i < c.output.count; i++) k.updateUTF8(c.output.array[i]);
+                hashes.add(k.digest());
+                return true;
+            })) {
+                throw ctx.error.toException();
+            }
+        }
+        return hashes.toArray(new byte[hashes.size()][]);
+    }
+    
     public String normalizeFragment(String name) { return normalizeFragment(name, false); }
     public String normalizeFragment(String name, boolean decompose) {
-        return transform(name, cps -> outputTokenize(cps, decompose ? NF::NFD : NF::NFC, e -> e.normalized.array), ENSIP15::flatten);
+        NormalizerContext ctx = new NormalizerContext();
+        StringBuilder sb = ctx.sb;
+        if (!transform(ctx, name, 0, name.length(), sb, decompose, e -> e.normalized.array, (spec, c) -> true)) {
+            throw ctx.error.toException();
+        }
+        return sb.toString();
     }
     
-    String transform(String name, Function<int[], List<OutputToken>> tokenizer, Function<List<OutputToken>, int[]> normalizer) {
-        int n = name.length();
-        if (n == 0) return ""; // empty name allowance
-        StringBuilder sb = new StringBuilder(n + 16); // guess
-        int prev = 0;
+    // fast path: every label is ascii and valid
+    static final int ASCII_NORMALIZED = 0;
+    static final int ASCII_MAPPED = 1; // requires asciiMapped
+    static final int ASCII_NONE = 2; // requires the full pipeline (or is invalid)
+    
+    int scanASCII(CharSequence name, int a, int b) {
+        final char UNDERSCORE = '_';
+        final char HYPHEN = '-';
+        if (a == b) return ASCII_NORMALIZED; // empty name allowance
+        NormMetrics m = metrics;
+        long t0 = m != null && NormalizerContext.sample(m) ? System.nanoTime() : 0;
+        int labels = 0;
+        int ret = ASCII_NORMALIZED;
+        int start = a;
+        boolean leading = true; // within leading underscores
+        for (int i = a; i <= b; i++) {
+            char ch = i < b ? name.charAt(i) : STOP_CH;
+            if (ch == STOP_CH) {
+                int len = i - start;
+                if (len == 0) return ASCII_NONE; // empty label
+                if (len >= 4 && name.charAt(start + 2) == HYPHEN && name.charAt(start + 3) == HYPHEN) return ASCII_NONE; // label extension
+                labels++;
+                start = i + 1;
+                leading = true;
+                continue;
+            }
+            if (ch >= 0x80) return ASCII_NONE;
+            char cp = asciiMapped[ch];
+            if (cp == 0) return ASCII_NONE;
+            if (cp == UNDERSCORE) {
+                if (!leading) return ASCII_NONE;
+            } else {
+                leading = false;
+            }
+            if (cp != ch) ret = ASCII_MAPPED;
+        }
+        if (m != null) {
+            for (int i = 0; i < labels; i++) m.label(ASCII, null);
+            if (t0 != 0) m.stage(NormStage.ASCII, System.nanoTime() - t0);
+        }
+        return ret;
+    }
+    
+    // returns the same instance if already normalized
+    // returns null if the name requires the full pipeline (or is invalid)
+    String normalizeASCII(String name) {
+        return normalizeASCII(name, null);
+    }
+    
+    // sb: optional scratch
+    String normalizeASCII(String name, StringBuilder sb) {
+        switch (scanASCII(name, 0, name.length())) {
+            case ASCII_NORMALIZED: return name;
+            case ASCII_MAPPED: {
+                if (sb != null) {
+                    sb.setLength(0);
+                    for (int i = 0, e = name.length(); i < e; i++) {
+                        char ch = name.charAt(i);
+                        sb.append(ch == STOP_CH ? ch : asciiMapped[ch]);
+                    }
+                    return sb.toString();
+                }
+                char[] v = name.toCharArray();
+                for (int i = 0; i < v.length; i++) {
+                    if (v[i] != STOP_CH) v[i] = asciiMapped[v[i]];
+                }
+                return new String(v);
+            }
+            default: return null;
+        }
+    }
+    
+    String transform(NormalizerContext ctx, String name, Function<EmojiSequence, int[]> emojiStyler, LabelNormalizer normalizer) {
+        String s = tryTransform(ctx, name, emojiStyler, normalizer);
+        if (s == null) throw ctx.error.toException();
+        return s;
+    }
+    
+    // returns null and sets ctx.error if invalid
+    String tryTransform(NormalizerContext ctx, String name, Function<EmojiSequence, int[]> emojiStyler, LabelNormalizer normalizer) {
+        StringBuilder sb = ctx.sb;
+        sb.setLength(0);
+        return transform(ctx, name, 0, name.length(), sb, false, emojiStyler, normalizer) ? sb.toString() : null;
+    }
+    
+    // returns null if valid
+    // out is unchanged on error
+    NormError transform(CharSequence name, int start, int end, Appendable out, Function<EmojiSequence, int[]> emojiStyler, LabelNormalizer normalizer) {
+        if (start < 0 || start > end || end > name.length()) throw new IndexOutOfBoundsException();
+        StringBuilder sb = out instanceof StringBuilder ? (StringBuilder)out : new StringBuilder(end - start + 16); // guess
+        int len = sb.length();
+        switch (scanASCII(name, start, end)) {
+            case ASCII_NORMALIZED: {
+                sb.append(name, start, end);
+                break;
+            }
+            case ASCII_MAPPED: {
+                for (int i = start; i < end; i++) {
+                    char ch = name.charAt(i);
+                    sb.append(ch == STOP_CH ? ch : asciiMapped[ch]);
+                }
+                break;
+            }
+            default: {
+                NormalizerContext ctx = new NormalizerContext();
+                if (!transform(ctx, name, start, end, sb, false, emojiStyler, normalizer)) {
+                    sb.setLength(len);
+                    return ctx.error;
+                }
+            }
+        }
+        if (sb != out) {
+            try {
+                out.append(sb);
+            } catch (IOException err) {
+                throw new UncheckedIOException(err);
+            }
+        }
+        return null;
+    }
+    
+    NormError normalizeUTF8(ByteBuffer name, int start, int end, ByteBuffer out) {
+        if (start < 0 || start > end || end > name.limit()) throw new IndexOutOfBoundsException();
+        switch (scanASCII(new StringUtils.ByteChars(name), start, end)) {
+            case ASCII_NORMALIZED: {
+                if (out.remaining() < end - start) throw new BufferOverflowException();
+                ByteBuffer src = name.duplicate();
+                src.limit(end).position(start);
+                out.put(src);
+                return null;
+            }
+            case ASCII_MAPPED: {
+                if (out.remaining() < end - start) throw new BufferOverflowException();
+                for (int i = start; i < end; i++) {
+                    byte ch = name.get(i);
+                    out.put(ch == STOP_CH ? ch : (byte)asciiMapped[ch]);
+                }
+                return null;
+            }
+            default: {
+                NormalizerContext ctx = new NormalizerContext();
+                IntList cps = new IntList(end - start);
+                if (!transformUTF8(ctx, name, start, end, cps, VALIDATED)) return ctx.error;
+                int n = 0;
+                for (int i = 0; i < cps.count; i++) n += StringUtils.UTF8Width(cps.array[i]);
+                if (out.remaining() < n) throw new BufferOverflowException();
+                for (int i = 0; i < cps.count; i++) StringUtils.putUTF8(out, cps.array[i]);
+                return null;
+            }
+        }
+    }
+    
+    boolean isNormalizedUTF8(ByteBuffer name, int start, int end) {
+        if (start < 0 || start > end || end > name.limit()) throw new IndexOutOfBoundsException();
+        switch (scanASCII(new StringUtils.ByteChars(name), start, end)) {
+            case ASCII_NORMALIZED: return true;
+            case ASCII_MAPPED: return false;
+            default: return transformUTF8(new NormalizerContext(), name, start, end, null, (spec, ctx) -> {
+                return spec.validated(ctx) && ctx.output.contentEquals(ctx.input); // stop at first change
+            });
+        }
+    }
+    
+    // appends the output codepoints of UTF-8 name[start, end) to out (if not null)
+    // returns false and sets ctx.error if any label is invalid
+    boolean transformUTF8(NormalizerContext ctx, ByteBuffer name, int start, int end, IntList out, LabelNormalizer normalizer) {
+        ctx.observe(metrics);
+        if (start == end) return true; // empty name allowance
+        int prev = start;
         boolean more = true;
         while (more) {
-            int next = name.indexOf(STOP_CH, prev);
+            int next = prev;
+            while (next < end && name.get(next) != STOP_CH) next++; // never inside a multibyte sequence
+            more = next < end;
+            ctx.start = prev;
+            ctx.end = next;
+            if (ctx.metrics != null) ctx.beginLabel();
+            boolean ok = decodeUTF8(ctx, name, prev, next) == null;
+            if (ctx.timing) ctx.lap(NormStage.EXPLODE);
+            ok = ok && outputTokenize(ctx, false, e -> e.normalized.array) == null && normalizer.apply(this, ctx);
+            if (ctx.metrics != null) ctx.endLabel();
+            if (!ok) return false;
+            if (out != null) {
+                out.add(ctx.output);
+                if (more) out.add(STOP_CH);
+            }
+            prev = next + 1;
+        }
+        return true;
+    }
+    
+    // sets ctx.input
+    // strict: rejects overlongs, surrogates, and codepoints above 10FFFF
+    NormError decodeUTF8(NormalizerContext ctx, ByteBuffer name, int a, int b) {
+        IntList buf = ctx.input;
+        buf.count = 0;
+        while (a < b) {
+            int pos = a;
+            int cp = name.get(a++) & 0xFF;
+            if (cp >= 0x80) {
+                int n = 0;
+                int lo = 0x80;
+                int hi = 0xBF;
+                if (cp >= 0xC2 && cp < 0xE0) {
+                    n = 1;
+                    cp &= 0x1F;
+                } else if (cp >= 0xE0 && cp < 0xF0) {
+                    n = 2;
+                    if (cp == 0xE0) lo = 0xA0; // overlong
+                    if (cp == 0xED) hi = 0x9F; // surrogate
+                    cp &= 0x0F;
+                } else if (cp >= 0xF0 && cp < 0xF5) {
+                    n = 3;
+                    if (cp == 0xF0) lo = 0x90; // overlong
+                    if (cp == 0xF4) hi = 0x8F; // above 10FFFF
+                    cp &= 0x07;
+                }
+                boolean valid = n > 0;
+                for (; n > 0; n--) {
+                    int x = a < b ? name.get(a) & 0xFF : -1;
+                    if (x < lo || x > hi) {
+                        valid = false;
+                        break;
+                    }
+                    a++;
+                    cp = (cp << 6) | (x & 0x3F);
+                    lo = 0x80;
+                    hi = 0xBF;
+                }
+                if (!valid) {
+                    // report the ill-formed subsequence
+                    int[] bytes = new int[a - pos];
+                    for (int i = 0; i < bytes.length; i++) bytes[i] = name.get(pos + i) & 0xFF;
+                    return error(ctx, INVALID_UTF8, -1, null, null, null, bytes);
+                }
+            }
+            buf.add(cp);
+        }
+        return null;
+    }
+    
+    // appends the output of name[start, end) to sb (if not null)
+    // returns false and sets ctx.error if any label is invalid
+    boolean transform(NormalizerContext ctx, CharSequence name, int start, int end, StringBuilder sb, boolean decompose, Function<EmojiSequence, int[]> emojiStyler, LabelNormalizer normalizer) {
+        ctx.observe(metrics);
+        if (start == end) return true; // empty name allowance
+        int prev = start;
+        boolean more = true;
+        while (more) {
+            int next = StringUtils.indexOf(name, STOP_CH, prev, end);
             if (next < 0) {
-                next = n;
+                next = end;
                 more = false;
             }
-            int[] cps = StringUtils.explode(name, prev, next);
-            try {
-                List<OutputToken> tokens = tokenizer.apply(cps);
-                for (int cp: normalizer.apply(tokens)) {
-                    StringUtils.appendCodepoint(sb, cp);
+            ctx.start = prev;
+            ctx.end = next;
+            BoundedCache<String,Object> cache = labelCache(ctx, decompose, normalizer);
+            if (cache != null) {
+                LabelCache.Key key = ctx.labelKey.set(name, prev, next);
+                Object value = cache.get(key);
+                if (value == null) {
+                    value = transformLabel(ctx, name, prev, next, decompose, emojiStyler, normalizer) ? new String(ctx.output.array, 0, ctx.output.count) : ctx.error;
+                    cache.put(key.toString(), value);
+                }
+                if (value instanceof NormError) {
+                    ctx.error = ((NormError)value).at(prev, next);
+                    return false;
+                }
+                if (sb != null) sb.append((String)value);
+            } else {
+                if (!transformLabel(ctx, name, prev, next, decompose, emojiStyler, normalizer)) return false;
+                if (sb != null) {
+                    for (int i = 0, e = ctx.output.count; i < e; i++) {
+                        StringUtils.appendCodepoint(sb, ctx.output.array[i]);
+                    }
                 }
-                if (more) sb.append(STOP_CH);
-            } catch (NormException e) {
-                throw new InvalidLabelException(prev, next, String.format("Invalid label \"%s\": %s", safeImplode(cps), e.getMessage()), e);
             }
+            if (more && sb != null) sb.append(STOP_CH);
             prev = next + 1;
         }
-        return sb.toString();
+        return true;
+    }
+    
+    // label output in ctx.output
+    boolean transformLabel(NormalizerContext ctx, CharSequence name, int a, int b, boolean decompose, Function<EmojiSequence, int[]> emojiStyler, LabelNormalizer normalizer) {
+        if (ctx.metrics != null) ctx.beginLabel();
+        ctx.input.count = 0;
+        StringUtils.explode(name, a, b, ctx.input);
+        if (ctx.timing) ctx.lap(NormStage.EXPLODE);
+        boolean ok = outputTokenize(ctx, decompose, emojiStyler) == null && normalizer.apply(this, ctx);
+        if (ctx.metrics != null) ctx.endLabel();
+        return ok;
+    }
+    
+    // cache of ctx for normalizer, or null
+    static BoundedCache<String,Object> labelCache(NormalizerContext ctx, boolean decompose, LabelNormalizer normalizer) {
+        LabelCache cache = ctx.labelCache;
+        if (cache == null || decompose) return null;
+        if (normalizer == VALIDATED) return cache.normalized;
+        if (normalizer == BEAUTIFIED) return cache.beautified;
+        return null;
     }
     
     public List<Label> split(String name) {
         if (name.isEmpty()) return Collections.emptyList(); // empty name allowance
         ArrayList<Label> labels = new ArrayList<>();
+        NormalizerContext ctx = new NormalizerContext();
         int prev = 0;
         boolean more = true;
         while (more) {
@@ -335,15 +1060,21 @@ public class ENSIP15 {
                 more = false;
             }
             Label l = new Label();
-            l.input = StringUtils.explode(name, prev, next);
-            l.start = prev;
-            l.end = next;
-            try {
-                l.tokens = outputTokenize(l.input, NF::NFC, e -> e.normalized.toArray()); // make copy
-                l.normalized = flatten(l.tokens);
-                l.group = checkValidLabel(l.normalized, l.tokens);
-            } catch (NormException err) {
-                l.error = err;
+            l.start = ctx.start = prev;
+            l.end = ctx.end = next;
+            ctx.input.count = 0;
+            StringUtils.explode(name, prev, next, ctx.input);
+            l.input = ctx.input.toArray();
+            NormError err = outputTokenize(ctx, false, e -> e.normalized.array);
+            if (err == null) {
+                l.tokens = ctx.tokens();
+                l.normalized = ctx.output.toArray();
+                err = checkValidLabel(ctx);
+            }
+            if (err != null) {
+                l.error = err.toNormException();
+            } else {
+                l.group = ctx.group;
             }
             labels.add(l);
             prev = next + 1;
@@ -352,262 +1083,373 @@ public class ENSIP15 {
         return labels;
     }
     
-    static class EmojiNode {
-        EmojiSequence emoji;
-        HashMap<Integer, EmojiNode> map;
-        EmojiNode then(int cp) {
-            if (map == null) map = new HashMap<>();
-            EmojiNode node = map.get(cp);
-            if (node == null) {
-                node = new EmojiNode();
-                map.put(cp, node);
-            }
-            return node;
-        }
+    NormError error(NormalizerContext ctx, String kind) {
+        return error(ctx, kind, -1, null, null, null, null);
+    }
+    NormError error(NormalizerContext ctx, String kind, int cp) {
+        return error(ctx, kind, cp, null, null, null, null);
+    }
+    NormError error(NormalizerContext ctx, String kind, int cp, Group group, Group other, EmojiSequence emoji, int[] cps) {
+        return ctx.error = new NormError(this, kind, ctx.start, ctx.end, ctx.input.toArray(), cp, group, other, emoji, cps);
     }
     
-    static class EmojiResult {
-        final int pos;
-        final EmojiSequence emoji;
-        EmojiResult(int pos, EmojiSequence emoji) {
-            this.pos = pos;
-            this.emoji = emoji;
-        }
+    // tokenizes ctx.input into ctx.output
+    NormError outputTokenize(NormalizerContext ctx, boolean decompose, Function<EmojiSequence, int[]> emojiStyler) {
+        ctx.output.count = 0;
+        ctx.tokenEnds.count = 0;
+        ctx.tokenEmojis.clear();
+        return outputTokenize(ctx, 0, decompose, emojiStyler, null);
     }
     
-    EmojiResult findEmoji(int[] cps, int i) {
-        EmojiNode node = emojiRoot;
-        EmojiResult last = null;
-        for (int e = cps.length; i < e; ) {
-            if (node.map == null) break;
-            node = node.map.get(cps[i++]);
-            if (node == null) break;
-            if (node.emoji != null) {
-                last = new EmojiResult(i, node.emoji); 
-            }
-        }
-        return last;
+    // resumable tokenization (see IncrementalNormalizer)
+    interface TokenCheckpoints {
+        // true if the text before codepoint i is unaffected by what follows
+        boolean accept(NormalizerContext ctx, int i);
+        // accepted: ctx.output holds everything before codepoint i
+        void mark(NormalizerContext ctx, int i);
     }
     
-    ArrayList<OutputToken> outputTokenize(int[] cps, Function<int[], int[]> nf, Function<EmojiSequence, int[]> emojiStyler) {
-        ArrayList<OutputToken> tokens = new ArrayList<>();
-        int n = cps.length;
-        IntList buf = new IntList(n);
-        for (int i = 0; i < n; ) {
-            EmojiResult match = findEmoji(cps, i);
-            if (match != null) {
-                if (buf.count > 0) {
-                    tokens.add(new OutputToken(nf.apply(buf.consume()), null));
-                    buf.count = 0;
-                }
-                tokens.add(new OutputToken(emojiStyler.apply(match.emoji), match.emoji)); 
-                i = match.pos;
+    // tokenizes ctx.input from codepoint i, after the tokens already in ctx.output
+    // output after the last token is an open text token, which is extended
+    // checkpoints (nullable) are offered every codepoint boundary after i
+    NormError outputTokenize(NormalizerContext ctx, int i, boolean decompose, Function<EmojiSequence, int[]> emojiStyler, TokenCheckpoints checkpoints) {
+        Derived d = derived();
+        EmojiAutomaton emojiAutomaton = d.emojiAutomaton;
+        int[] cps = ctx.input.array;
+        int n = ctx.input.count;
+        IntList buf = ctx.text;
+        buf.count = 0;
+        int flags = 0; // union of text props
+        for (int start = i; i < n; ) {
+            if (checkpoints != null && i > start && checkpoints.accept(ctx, i)) {
+                flushText(ctx, decompose, flags);
+                flags = 0;
+                checkpoints.mark(ctx, i);
+            }
+            long match = emojiAutomaton.find(cps, i, n);
+            if (match != EmojiAutomaton.NONE) {
+                flushText(ctx, decompose, flags);
+                flags = 0;
+                closeText(ctx);
+                EmojiSequence emoji = emojiAutomaton.accept[EmojiAutomaton.matchState(match)];
+                int[] v = emojiStyler.apply(emoji);
+                ctx.output.add(v, 0, v.length);
+                ctx.addToken(emoji);
+                i = EmojiAutomaton.matchEnd(match);
             } else {
                 int cp = cps[i++];
-                if (possiblyValid.contains(cp)) {
+                int props = d.props.get(cp);
+                if ((props & P_VALID) != 0) {
                     buf.add(cp);
-                } else {
-                    ReadOnlyIntList replace = mapped.get(cp);
-                    if (replace != null) {
-                        buf.add(replace.array);
-                    } else if (!ignored.contains(cp)) {
-                        throw new DisallowedCharacterException(safeCodepoint(cp), cp);
-                    }
+                    flags |= props;
+                } else if ((props & P_MAPPED) != 0) {
+                    int off = props >>> P_MAPPING_SHIFT;
+                    buf.add(d.mappings, off + 1, d.mappings[off]);
+                    flags |= props;
+                } else if ((props & P_IGNORED) == 0) {
+                    if (ctx.timing) ctx.lap(NormStage.TOKENIZE);
+                    return error(ctx, DISALLOWED_CHARACTER, cp);
                 }
             }
         }
-        if (buf.count > 0) {
-            tokens.add(new OutputToken(nf.apply(buf.consume()), null));
+        flushText(ctx, decompose, flags);
+        closeText(ctx);
+        if (ctx.timing) ctx.lap(NormStage.TOKENIZE);
+        return null;
+    }
+    
+    // appends ctx.text to the open text token
+    // flags: union of the props of its codepoints
+    void flushText(NormalizerContext ctx, boolean decompose, int flags) {
+        IntList text = ctx.text;
+        if (text.count == 0) return;
+        if (ctx.timing) ctx.lap(NormStage.TOKENIZE);
+        if (decompose) {
+            NF.NFD(text.array, 0, text.count, ctx.output, ctx.packed, ctx.stack);
+        } else if ((flags & P_NFC_CHECK) != 0) {
+            NF.NFC(text.array, 0, text.count, ctx.output, ctx.packed, ctx.stack);
+        } else {
+            ctx.output.add(text.array, 0, text.count); // already NFC
         }
-        return tokens;
+        if (ctx.timing) ctx.lap(NormStage.NFC);
+        text.count = 0;
     }
     
-    Group checkValidLabel(int[] norm, List<OutputToken> tokens) {
-        if (norm.length == 0) {
-            throw new NormException(EMPTY_LABEL);
+    // ends the open text token, if any
+    void closeText(NormalizerContext ctx) {
+        if (ctx.output.count > ctx.tokenStart(ctx.tokenEnds.count)) {
+            ctx.addToken(null);
         }
-        checkLeadingUnderscore(norm);
-        boolean emoji = tokens.size() > 1 || tokens.get(0).emoji != null;
-        if (!emoji && Arrays.stream(norm).allMatch(cp -> cp < 0x80)) {
-            checkLabelExtension(norm);
-            return ASCII;
+    }
+    
+    // unique values of v[0, n) in order of appearance
+    static void distinct(int[] v, int n, IntList out) {
+        out.count = 0;
+        if (n > 64) { // avoid quadratic
+            out.add(Arrays.stream(v, 0, n).distinct().toArray());
+            return;
         }
-        int[] chars = tokens.stream().filter(t -> t.emoji == null).flatMapToInt(t -> t.stream()).toArray();
-        if (emoji && chars.length == 0) {
-            return EMOJI;
+        outer: for (int i = 0; i < n; i++) {
+            int x = v[i];
+            for (int j = 0; j < out.count; j++) {
+                if (out.array[j] == x) continue outer;
+            }
+            out.add(x);
         }
-        checkCombiningMarks(tokens);
-        checkFenced(norm);
-        int[] unique = Arrays.stream(chars).distinct().toArray();
-        Group group = determineGroup(unique);
-        checkGroup(group, chars); // need text in order
-        checkWhole(group, unique); // only need unique text
-        return group;
     }
     
-    static void checkLeadingUnderscore(int[] cps) {
+    // validates ctx.output
+    // sets ctx.group
+    NormError checkValidLabel(NormalizerContext ctx) {
+        int[] norm = ctx.output.array;
+        int n = ctx.output.count;
+        if (n == 0) {
+            return error(ctx, EMPTY_LABEL);
+        }
+        NormError err = checkLeadingUnderscore(ctx, norm, n);
+        if (err != null) return err;
+        boolean emoji = ctx.tokenEnds.count > 1 || ctx.tokenEmojis.get(0) != null;
+        if (!emoji) {
+            boolean ascii = true;
+            for (int i = 0; i < n; i++) {
+                if (norm[i] >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+            }
+            if (ascii) {
+                err = checkLabelExtension(ctx, norm, n);
+                if (err != null) return err;
+                ctx.group = ASCII;
+                return null;
+            }
+        }
+        IntList chars = ctx.text; // text-only output
+        chars.count = 0;
+        for (int i = 0; i < ctx.tokenEnds.count; i++) {
+            if (ctx.tokenEmojis.get(i) == null) {
+                int a = ctx.tokenStart(i);
+                chars.add(norm, a, ctx.tokenEnds.array[i] - a);
+            }
+        }
+        if (emoji && chars.count == 0) {
+            ctx.group = EMOJI;
+            return null;
+        }
+        err = checkCombiningMarks(ctx);
+        if (err == null) err = checkFenced(ctx, norm, n);
+        if (ctx.timing) ctx.lap(NormStage.MARKS);
+        if (err != null) return err;
+        IntList unique = ctx.unique;
+        distinct(chars.array, chars.count, unique);
+        err = determineGroup(ctx, unique.array, unique.count);
+        if (ctx.timing) ctx.lap(NormStage.DETERMINE_GROUP);
+        if (err != null) return err;
+        err = checkGroup(ctx, ctx.group, chars.array, chars.count); // need text in order
+        if (ctx.timing) ctx.lap(NormStage.CHECK_GROUP);
+        if (err != null) return err;
+        err = checkWhole(ctx, ctx.group, unique.array, unique.count); // only need unique text
+        if (ctx.timing) ctx.lap(NormStage.CHECK_WHOLE);
+        return err;
+    }
+    
+    NormError checkLeadingUnderscore(NormalizerContext ctx, int[] cps, int n) {
         final int UNDERSCORE = 0x5F;
         boolean allowed = true;
-        for (int cp: cps) {
+        for (int i = 0; i < n; i++) {
+            int cp = cps[i];
             if (allowed) {
                 if (cp != UNDERSCORE) allowed = false;
             } else {
                 if (cp == UNDERSCORE) {
-                    throw new NormException(INVALID_UNDERSCORE);
+                    return error(ctx, INVALID_UNDERSCORE);
                 }
             }
         }
+        return null;
     }
     
-    static void checkLabelExtension(int[] cps)  {
+    NormError checkLabelExtension(NormalizerContext ctx, int[] cps, int n)  {
         final int HYPHEN = 0x2D;
-        if (cps.length >= 4 && cps[2] == HYPHEN && cps[3] == HYPHEN) {
-            throw new NormException(INVALID_LABEL_EXTENSION, StringUtils.implode(Arrays.copyOf(cps, 4)));
+        if (n >= 4 && cps[2] == HYPHEN && cps[3] == HYPHEN) {
+            return error(ctx, INVALID_LABEL_EXTENSION, -1, null, null, null, Arrays.copyOf(cps, 4));
         }
+        return null;
     }
     
-    void checkFenced(int[] cps)  {
-        String name = fenced.get(cps[0]);
-        if (name != null) {
-            throw new NormException(FENCED_LEADING, name);
+    NormError checkFenced(NormalizerContext ctx, int[] cps, int n)  {
+        CodepointTrie props = derived().props;
+        if ((props.get(cps[0]) & P_FENCED) != 0) {
+            return error(ctx, FENCED_LEADING, cps[0]);
         }
-        int n = cps.length;
         int last = -1;
-        String prev = "";
+        int prev = -1;
         for (int i = 1; i < n; i++) {
-            name = fenced.get(cps[i]);
-            if (name != null) {
+            int cp = cps[i];
+            if ((props.get(cp) & P_FENCED) != 0) {
                 if (last == i) {
-                    throw new NormException(FENCED_ADJACENT, String.format("%s + %s", prev, name));
+                    return error(ctx, FENCED_ADJACENT, cp, null, null, null, new int[]{ prev, cp });
                 }
                 last = i + 1;
-                prev = name;
+                prev = cp;
             }
         }
         if (last == n) {
-            throw new NormException(FENCED_TRAILING, prev);
+            return error(ctx, FENCED_TRAILING, prev);
         }
+        return null;
     }
     
-    void checkCombiningMarks(List<OutputToken> tokens) {
-        for (int i = 0, e = tokens.size(); i < e; i++) {
-            OutputToken t = tokens.get(i);
-            if (t.emoji != null) continue;
-            int cp = t.cps[0];
-            if (combiningMarks.contains(cp)) {
+    NormError checkCombiningMarks(NormalizerContext ctx) {
+        CodepointTrie props = derived().props;
+        for (int i = 0, e = ctx.tokenEnds.count; i < e; i++) {
+            if (ctx.tokenEmojis.get(i) != null) continue;
+            int cp = ctx.output.array[ctx.tokenStart(i)];
+            if ((props.get(cp) & P_CM) != 0) {
                 if (i == 0) {
-                    throw new NormException(CM_LEADING, safeCodepoint(cp));
+                    return error(ctx, CM_LEADING, cp);
                 } else {
-                    throw new NormException(CM_AFTER_EMOJI, String.format("%s + %s", tokens.get(i - 1).emoji.form, safeCodepoint(cp)));
+                    return error(ctx, CM_AFTER_EMOJI, cp, null, null, ctx.tokenEmojis.get(i - 1), null);
                 }
             }
         }
+        return null;
     }
     
-    Group determineGroup(int[] unique) {
-        int prev = groups.size();
-        Group[] gs = groups.toArray(new Group[prev]);
-        for (int cp: unique) {
-            int next = 0;
-            for (int i = 0; i < prev; i++) {
-                if (gs[i].contains(cp)) {
-                    gs[next++] = gs[i];                    
-                }
+    // reuses scratch if possible
+    static long[] allGroups(long[] scratch, int words) {
+        long[] v = scratch != null && scratch.length == words ? scratch : new long[words];
+        Arrays.fill(v, -1L);
+        return v;
+    }
+    
+    static int lowestBit(long[] bits) {
+        for (int i = 0; ; i++) {
+            if (bits[i] != 0) return (i << 6) | Long.numberOfTrailingZeros(bits[i]);
+        }
+    }
+    
+    // sets ctx.group
+    NormError determineGroup(NormalizerContext ctx, int[] unique, int n) {
+        Derived d = derived();
+        int words = d.groupWords;
+        long[] mask = ctx.groupMask = allGroups(ctx.groupMask, words);
+        long[] patterns = d.groupPatterns;
+        for (int u = 0; u < n; u++) {
+            int cp = unique[u];
+            int bits = d.groupBits.get(cp);
+            if (bits == 0) {
+                // the character was composed of valid parts
+                // but it's NFC form is invalid
+                return error(ctx, DISALLOWED_CHARACTER, cp);
             }
-            if (next == 0) {   
-                if (!groups.stream().anyMatch(g -> g.contains(cp))) {
-                    // the character was composed of valid parts
-                    // but it's NFC form is invalid
-                    throw new DisallowedCharacterException(safeCodepoint(cp), cp);
-                } else {
-                    // there is no group that contains all these characters
-                    // throw using the highest priority group that matched
-                    // https://www.unicode.org/reports/tr39/#mixed_script_confusables
-                    throw createMixtureException(gs[0], cp);
-                }
-            }    
-            prev = next;
-            if (prev == 1) break; // there is only one group left
+            int off = bits >>> GROUP_SHIFT;
+            long any = 0;
+            for (int i = 0; i < words; i++) {
+                any |= mask[i] & patterns[off + i];
+            }
+            if (any == 0) {
+                // there is no group that contains all these characters
+                // throw using the highest priority group that matched
+                // https://www.unicode.org/reports/tr39/#mixed_script_confusables
+                return mixtureError(ctx, groups.get(lowestBit(mask)), cp);
+            }
+            int count = 0;
+            for (int i = 0; i < words; i++) {
+                count += Long.bitCount(mask[i] &= patterns[off + i]);
+            }
+            if (count == 1) break; // there is only one group left
         }
-        return gs[0];
+        ctx.group = groups.get(lowestBit(mask));
+        return null;
     }
     
-    void checkGroup(Group group, int[] cps) {
-        for (int cp: cps) {
-            if (!group.contains(cp)) {
-                throw createMixtureException(group, cp);
+    NormError checkGroup(NormalizerContext ctx, Group group, int[] cps, int n) {
+        Derived d = derived();
+        int word = group.index >>> 6;
+        long bit = 1L << group.index;
+        for (int u = 0; u < n; u++) {
+            int cp = cps[u];
+            int bits = d.groupBits.get(cp);
+            if (bits == 0 || (d.groupPatterns[(bits >>> GROUP_SHIFT) + word] & bit) == 0) {
+                return mixtureError(ctx, group, cp);
             }
         }
-        if (group.CMWhitelisted) return;
-        int[] decomposed = NF.NFD(cps);
-        for (int i = 1, e = decomposed.length; i < e; i++) {
+        if (group.CMWhitelisted) return null;
+        IntList nfd = ctx.decomposed;
+        nfd.count = 0;
+        NF.NFD(cps, 0, n, nfd, ctx.packed, ctx.stack);
+        int[] decomposed = nfd.array;
+        CodepointTrie props = d.props;
+        for (int i = 1, e = nfd.count; i < e; i++) {
             // https://www.unicode.org/reports/tr39/#Optional_Detection
-            if (nonSpacingMarks.contains(decomposed[i])) {
+            if ((props.get(decomposed[i]) & P_NSM) != 0) {
                 int j = i + 1;
-                for (int cp; j < e && nonSpacingMarks.contains(cp = decomposed[j]); j++) {
+                for (int cp; j < e && (props.get(cp = decomposed[j]) & P_NSM) != 0; j++) {
                     for (int k = i; k < j; k++) {
                         // a. Forbid sequences of the same nonspacing mark.
                         if (decomposed[k] == cp) {
-                            throw new NormException(NSM_DUPLICATE, safeCodepoint(cp));
+                            return error(ctx, NSM_DUPLICATE, cp);
                         }
                     }
                 }
                 // b. Forbid sequences of more than 4 nonspacing marks (gc=Mn or gc=Me).
-                int n = j - i;
-                if (n > maxNonSpacingMarks) {
-                    throw new NormException(NSM_EXCESSIVE, String.format("%s (%d/%d)", safeImplode(Arrays.copyOfRange(decomposed, i-1, j)), n, maxNonSpacingMarks));
+                if (j - i > maxNonSpacingMarks) {
+                    return error(ctx, NSM_EXCESSIVE, -1, null, null, null, Arrays.copyOfRange(decomposed, i-1, j));
                 }
                 i = j;
             }
         }
+        return null;
     }
     
-    void checkWhole(Group group, int[] unique) {
-        int bound = 0;
-        int[] maker = null;
-        IntList shared = new IntList(unique.length);
-        for (int cp: unique) {
-            Whole w = confusables.get(cp);
-            if (w == null) {
-                shared.add(cp);
-            } else if (w == Whole.UNIQUE_PH) {
-                return; // unique, non-confusable
+    NormError checkWhole(NormalizerContext ctx, Group group, int[] unique, int n) {
+        Derived d = derived();
+        int words = d.groupWords;
+        long[] patterns = d.groupPatterns;
+        long[] maker = ctx.makerMask = allGroups(ctx.makerMask, words); // intersection of complements
+        long[] shared = ctx.sharedMask = allGroups(ctx.sharedMask, words); // groups containing every shared cp
+        boolean confused = false;
+        for (int u = 0; u < n; u++) {
+            int cp = unique[u];
+            int w = d.confusables.get(cp);
+            if (w == UNIQUE) return null; // unique, non-confusable
+            long[] mask;
+            int off;
+            if (w == 0) {
+                int bits = d.groupBits.get(cp);
+                if (bits == 0) return null; // no group
+                mask = shared;
+                off = bits >>> GROUP_SHIFT;
             } else {
-                int[] comp = w.complements.get(cp); // exists by construction
-                if (bound == 0) {
-                    maker = comp.clone();
-                    bound = comp.length; 
-                } else {
-                    int b = 0;
-                    for (int i = 0; i < bound; i++) {
-                        if (Arrays.binarySearch(comp, maker[i]) >= 0) {
-                            maker[b++] = maker[i];
-                        }
-                    }
-                    bound = b;
-                }
-                if (bound == 0) {
-                    return; // confusable intersection is empty
-                }
+                mask = maker;
+                off = w - 1;
+                confused = true;
+            }
+            long any = 0;
+            for (int i = 0; i < words; i++) {
+                any |= mask[i] &= patterns[off + i];
+            }
+            if (any == 0) {
+                return null; // confusable intersection is empty
             }
         }
-        if (bound > 0) {
-            next: for (int i = 0; i < bound; i++) {
-                Group other = groups.get(maker[i]);
-                if (shared.stream().allMatch(other::contains)) {
-                    throw new ConfusableException(group, other);
+        if (confused) {
+            for (int i = 0; i < words; i++) {
+                long both = maker[i] & shared[i];
+                if (both != 0) {
+                    Group other = groups.get((i << 6) | Long.numberOfTrailingZeros(both));
+                    return error(ctx, WHOLE_CONFUSABLE, -1, group, other, null, null);
                 }
             }
         }
+        return null;
     }
     
-    IllegalMixtureException createMixtureException(Group group, int cp) {
-        String conflict = safeCodepoint(cp);
-        Group other = groups.stream().filter(g -> g.primary.contains(cp)).findFirst().orElse(null);
-        if (other != null) {
-            conflict = String.format("%s %s", other, conflict);
-        }
-        return new IllegalMixtureException(String.format("%s + %s", group, conflict), cp, group, other);
+    NormError mixtureError(NormalizerContext ctx, Group group, int cp) {
+        int primary = (derived().groupBits.get(cp) & GROUP_PRIMARY) - 1;
+        Group other = primary < 0 ? null : groups.get(primary);
+        return error(ctx, ILLEGAL_MIXTURE, cp, group, other, null, null);
     }
-    
+
 }
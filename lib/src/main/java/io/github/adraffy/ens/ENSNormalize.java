@@ -1,32 +1,88 @@
 package io.github.adraffy.ens;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 public class ENSNormalize {
     
-    static public final NF NF = new NF(decoder("/nf.bin"));
-    static public final ENSIP15 ENSIP15 = new ENSIP15(NF, decoder("/spec.bin"));
+    static public final NF NF;
+    static public final ENSIP15 ENSIP15;
+    static {
+        byte[] nf = readResource("/nf.bin");
+        byte[] spec = readResource("/spec.bin");
+        NF = new NF(decoder(nf));
+        ENSIP15 = new ENSIP15(NF, decoder(spec), snapshot("/snapshot.bin", Snapshot.hash(nf, spec)));
+    }
     
-    static Decoder decoder(String name) {
-        try (InputStream in = ENSNormalize.class.getResourceAsStream(name)) {
-            final int chunk = 8192;
-            byte[] buf = new byte[chunk];
-            int len = 0;
-            while (true) {
-                int read = in.read(buf, len, chunk);
-                if (read == -1) break;
-                len += read;
-                if (buf.length - len < chunk) {
-                    buf = Arrays.copyOf(buf, buf.length << 1);
+    // representative names covering the hot paths
+    static final String[] TRAINING = {
+        "vitalik.eth", "RaFFY.eth", "__a-b.$9", "ab'c", "💩.eth", "🚴‍♂️.eth", "1⃣2⃣.eth", "👨‍👩‍👧‍👦",
+        "ελληνικά", "русский", "日本語", "العربية", "café", "e\u0301", "𝕏", "ΞΞΞ.eth",
+        "a_b", "ab--cd", "a..b", "\u03BF\u043E", "a\u0430", "\u0300a", "🚴\u0300", "x\u200D", "\uFFFD"
+    };
+    
+    // finishes initialization and runs the training names through every hot path
+    // so the jit reaches steady-state before serving traffic
+    static public void warmup() {
+        warmup(2000);
+    }
+    static public void warmup(int rounds) {
+        ENSIP15.derived();
+        for (int i = 0; i < rounds; i++) {
+            for (String name: TRAINING) {
+                ENSIP15.tryNormalize(name);
+                try {
+                    ENSIP15.beautify(name);
+                } catch (InvalidLabelException ignored) {
                 }
             }
-            return new Decoder(ByteBuffer.wrap(buf, 0, len).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+        }
+    }
+    
+    // ascii names are served while this runs
+    static public CompletableFuture<Void> warmupAsync() {
+        return CompletableFuture.runAsync(ENSNormalize::warmup);
+    }
+    
+    static Decoder decoder(String name) {
+        return decoder(readResource(name));
+    }
+    static Decoder decoder(byte[] v) {
+        return new Decoder(ByteBuffer.wrap(v).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+    }
+    
+    // null if missing or stale
+    static Snapshot snapshot(String name, int hash) {
+        if (ENSNormalize.class.getResource(name) == null) return null;
+        return Snapshot.read(readResource(name), hash);
+    }
+    
+    static byte[] readResource(String name) {
+        try (InputStream in = ENSNormalize.class.getResourceAsStream(name)) {
+            if (in == null) throw new IOException("missing resource");
+            return readAll(in);
         } catch (Exception err) {
             throw new IllegalStateException(name, err); 
         }
     }
     
+    static byte[] readAll(InputStream in) throws IOException {
+        final int chunk = 8192;
+        byte[] buf = new byte[chunk];
+        int len = 0;
+        while (true) {
+            int read = in.read(buf, len, chunk);
+            if (read == -1) break;
+            len += read;
+            if (buf.length - len < chunk) {
+                buf = Arrays.copyOf(buf, buf.length << 1);
+            }
+        }
+        return Arrays.copyOf(buf, len);
+    }
+
 }
@@ -0,0 +1,145 @@
+package io.github.adraffy.ens;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+// emoji trie compiled into arrays
+// state 0 is the root, edges of each state are sorted by codepoint
+final class EmojiAutomaton {
+    
+    static final long NONE = -1;
+    
+    // match = state << 32 | end
+    static int matchState(long match) {
+        return (int)(match >>> 32);
+    }
+    static int matchEnd(long match) {
+        return (int)match;
+    }
+    
+    final long[] starts; // bitset of codepoints that begin an emoji
+    final int[] edges; // state -> [edges[state], edges[state + 1])
+    final int[] edgeCps;
+    final int[] edgeStates;
+    final EmojiSequence[] accept; // state -> emoji (nullable)
+    
+    EmojiAutomaton(long[] starts, int[] edges, int[] edgeCps, int[] edgeStates, EmojiSequence[] accept) {
+        this.starts = starts;
+        this.edges = edges;
+        this.edgeCps = edgeCps;
+        this.edgeStates = edgeStates;
+        this.accept = accept;
+    }
+    
+    boolean isStart(int cp) {
+        int i = cp >>> 6;
+        return i < starts.length && (starts[i] & (1L << cp)) != 0;
+    }
+    
+    int next(int state, int cp) {
+        int lo = edges[state];
+        int hi = edges[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int x = edgeCps[mid];
+            if (x < cp) {
+                lo = mid + 1;
+            } else if (x > cp) {
+                hi = mid - 1;
+            } else {
+                return edgeStates[mid];
+            }
+        }
+        return -1;
+    }
+    
+    // longest match of cps[i, e)
+    long find(int[] cps, int i, int e) {
+        if (!isStart(cps[i])) return NONE;
+        long last = NONE;
+        for (int state = 0; i < e; ) {
+            state = next(state, cps[i++]);
+            if (state < 0) break;
+            if (accept[state] != null) {
+                last = ((long)state << 32) | i;
+            }
+        }
+        return last;
+    }
+    
+    static class Node {
+        EmojiSequence emoji;
+        TreeMap<Integer,Node> map;
+        Node then(int cp) {
+            if (map == null) map = new TreeMap<>();
+            Node node = map.get(cp);
+            if (node == null) {
+                node = new Node();
+                map.put(cp, node);
+            }
+            return node;
+        }
+    }
+    
+    static EmojiAutomaton build(List<EmojiSequence> emojis) {
+        // trie of every FE0F-optional permutation
+        Node root = new Node();
+        for (EmojiSequence emoji: emojis) {
+            ArrayList<Node> nodes = new ArrayList<>();
+            nodes.add(root);
+            for (int cp: emoji.beautified.array) {
+                if (cp == 0xFE0F) {
+                    for (int i = 0, e = nodes.size(); i < e; i++) {
+                        nodes.add(nodes.get(i).then(cp));
+                    }
+                } else {
+                    for (int i = 0, e = nodes.size(); i < e; i++) {
+                        nodes.set(i, nodes.get(i).then(cp));
+                    }
+                }
+            }
+            for (Node x: nodes) {
+                x.emoji = emoji;
+            }
+        }
+        // number states breadth-first
+        ArrayList<Node> states = new ArrayList<>();
+        states.add(root);
+        int count = 0;
+        for (int i = 0; i < states.size(); i++) {
+            Node node = states.get(i);
+            if (node.map != null) {
+                states.addAll(node.map.values());
+                count += node.map.size();
+            }
+        }
+        int n = states.size();
+        int[] edges = new int[n + 1];
+        int[] edgeCps = new int[count];
+        int[] edgeStates = new int[count];
+        EmojiSequence[] accept = new EmojiSequence[n];
+        int next = 1;
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            Node node = states.get(i);
+            accept[i] = node.emoji;
+            edges[i] = pos;
+            if (node.map != null) {
+                for (Integer cp: node.map.keySet()) { // sorted
+                    edgeCps[pos] = cp;
+                    edgeStates[pos++] = next++;
+                }
+            }
+        }
+        edges[n] = pos;
+        int max = root.map.lastKey();
+        long[] starts = new long[(max >> 6) + 1];
+        for (int cp: root.map.keySet()) {
+            starts[cp >> 6] |= 1L << cp;
+        }
+        return new EmojiAutomaton(starts, edges, edgeCps, edgeStates, accept);
+    }
+    
+}
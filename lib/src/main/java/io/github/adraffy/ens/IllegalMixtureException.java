@@ -6,11 +6,11 @@ public class IllegalMixtureException extends NormException {
     public final Group group;
     public final Group other; // nullable
     
-    IllegalMixtureException(String reason, int cp, Group group, Group other) {
-        super(ENSIP15.ILLEGAL_MIXTURE, reason);
-        this.cp = cp;
-        this.group = group;
-        this.other = other;
+    IllegalMixtureException(NormError error) {
+        super(error);
+        this.cp = error.cp;
+        this.group = error.group;
+        this.other = error.other;
     }    
     
 }
@@ -0,0 +1,245 @@
+package io.github.adraffy.ens;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+// stateful normalizer for text that is edited at the end (search-as-you-type)
+// completed labels are kept, the current label resumes from its last checkpoint:
+// a codepoint boundary where every earlier emoji match and NFC run is final
+// results match ENSIP15 for the whole input
+// not thread-safe: keep one per input
+public class IncrementalNormalizer {
+    
+    static final class Result {
+        final int start; // label range
+        final int end;
+        final NormError error; // null if valid
+        final String normalized;
+        final String beautified;
+        final Group group; // details
+        final EmojiSequence[] emojis;
+        Result(int start, int end, NormError error, String normalized, String beautified, Group group, EmojiSequence[] emojis) {
+            this.start = start;
+            this.end = end;
+            this.error = error;
+            this.normalized = normalized;
+            this.beautified = beautified;
+            this.group = group;
+            this.emojis = emojis;
+        }
+    }
+    
+    public final ENSIP15 spec;
+    final int lookahead; // longest emoji
+    final NormalizerContext ctx = new NormalizerContext(); // ctx.input = current label
+    final StringBuilder input = new StringBuilder();
+    final ArrayList<Result> labels = new ArrayList<>(); // completed
+    int labelStart;
+    final IntList cpEnds = new IntList(); // end of each current label codepoint in input
+    final IntList checkpoints = new IntList(); // { codepoint, output count, token count } * n
+    Result current;
+    
+    public IncrementalNormalizer(ENSIP15 ens) {
+        spec = ens;
+        lookahead = ens.emojis.stream().mapToInt(e -> e.beautified.size()).max().orElse(0);
+        update(0);
+    }
+    
+    public String input() {
+        return input.toString();
+    }
+    
+    // replaces the input
+    // only the part after the common prefix is reprocessed
+    public void set(CharSequence s) {
+        int n = Math.min(s.length(), input.length());
+        int same = 0;
+        while (same < n && s.charAt(same) == input.charAt(same)) same++;
+        input.setLength(same);
+        input.append(s, same, s.length());
+        update(same);
+    }
+    
+    public void append(CharSequence s) {
+        int n = input.length();
+        input.append(s);
+        update(n);
+    }
+    public void append(char ch) {
+        int n = input.length();
+        input.append(ch);
+        update(n);
+    }
+    
+    // removes the last codepoint
+    public void backspace() {
+        int n = input.length();
+        if (n == 0) return;
+        n -= Character.charCount(Character.codePointBefore(input, n));
+        input.setLength(n);
+        update(n);
+    }
+    
+    public void clear() {
+        input.setLength(0);
+        update(0);
+    }
+    
+    // returns null if valid
+    public NormError error() {
+        if (input.length() == 0) return null;
+        for (Result r: labels) {
+            if (r.error != null) return r.error;
+        }
+        return current.error;
+    }
+    
+    public boolean isValid() {
+        return error() == null;
+    }
+    
+    // returns null if invalid
+    public String normalized() {
+        if (input.length() == 0) return "";
+        if (!isValid()) return null;
+        StringBuilder sb = new StringBuilder(input.length() + 16);
+        for (Result r: labels) {
+            sb.append(r.normalized).append(ENSIP15.STOP_CH);
+        }
+        return sb.append(current.normalized).toString();
+    }
+    
+    // returns null if invalid
+    public String beautified() {
+        if (input.length() == 0) return "";
+        if (!isValid()) return null;
+        StringBuilder sb = new StringBuilder(input.length() + 16);
+        for (Result r: labels) {
+            sb.append(r.beautified).append(ENSIP15.STOP_CH);
+        }
+        return sb.append(current.beautified).toString();
+    }
+    
+    public NormResult result() {
+        NormError error = error();
+        return new NormResult(input(), error == null ? normalized() : null, error);
+    }
+    
+    // returns null if invalid
+    public NormDetails details() {
+        String normed = normalized();
+        if (normed == null) return null;
+        HashSet<Group> groups = new HashSet<>();
+        HashSet<EmojiSequence> emojis = new HashSet<>();
+        if (normed.length() > 0) {
+            for (Result r: labels) {
+                groups.add(r.group);
+                for (EmojiSequence e: r.emojis) emojis.add(e);
+            }
+            groups.add(current.group);
+            for (EmojiSequence e: current.emojis) emojis.add(e);
+        }
+        return spec.details(normed, groups, emojis);
+    }
+    
+    // input[0, from) is unchanged
+    void update(int from) {
+        // reopen completed labels
+        IntList cps = ctx.input;
+        while (from < labelStart) {
+            labelStart = labels.remove(labels.size() - 1).start;
+            cps.count = 0;
+        }
+        // drop changed codepoints, including a high surrogate that may now pair
+        int keep = cps.count;
+        while (keep > 0 && cpEnds.array[keep - 1] > from) keep--;
+        if (keep > 0 && Character.isHighSurrogate(input.charAt(cpEnds.array[keep - 1] - 1))) keep--;
+        cps.count = cpEnds.count = keep;
+        // drop checkpoints that looked at them
+        while (checkpoints.count > 0 && checkpoints.array[checkpoints.count - 3] + lookahead > keep) {
+            checkpoints.count -= 3;
+        }
+        // explode the rest, completing labels
+        int pos = keep > 0 ? cpEnds.array[keep - 1] : labelStart;
+        for (int e = input.length(); pos < e; ) {
+            if (input.charAt(pos) == ENSIP15.STOP_CH) {
+                labels.add(process(pos));
+                labelStart = ++pos;
+                cps.count = cpEnds.count = checkpoints.count = 0;
+                continue;
+            }
+            int cp = Character.codePointAt(input, pos);
+            pos += Character.charCount(cp);
+            cps.add(cp);
+            cpEnds.add(pos);
+        }
+        current = process(input.length());
+    }
+    
+    // current label ends at end
+    Result process(int end) {
+        NormalizerContext ctx = this.ctx;
+        ctx.start = labelStart;
+        ctx.end = end;
+        int i = 0;
+        ctx.output.count = 0;
+        ctx.tokenEnds.count = 0;
+        if (checkpoints.count > 0) {
+            i = checkpoints.array[checkpoints.count - 3];
+            ctx.output.count = checkpoints.array[checkpoints.count - 2];
+            ctx.tokenEnds.count = checkpoints.array[checkpoints.count - 1];
+        }
+        while (ctx.tokenEmojis.size() > ctx.tokenEnds.count) {
+            ctx.tokenEmojis.remove(ctx.tokenEmojis.size() - 1);
+        }
+        NormError error = spec.outputTokenize(ctx, i, false, e -> e.normalized.array, hook); // resumes the open text token
+        if (error == null) error = spec.checkValidLabel(ctx);
+        if (error != null) return new Result(labelStart, end, error, null, null, null, null);
+        StringBuilder norm = new StringBuilder();
+        StringBuilder pretty = new StringBuilder();
+        boolean greek = ctx.group == spec.GREEK;
+        for (int t = 0; t < ctx.tokenEnds.count; t++) {
+            EmojiSequence emoji = ctx.tokenEmojis.get(t);
+            if (emoji != null) {
+                for (int cp: emoji.normalized.array) StringUtils.appendCodepoint(norm, cp);
+                pretty.append(emoji.form);
+            } else {
+                for (int j = ctx.tokenStart(t), e = ctx.tokenEnds.array[t]; j < e; j++) {
+                    int cp = ctx.output.array[j];
+                    StringUtils.appendCodepoint(norm, cp);
+                    StringUtils.appendCodepoint(pretty, cp == 0x3BE && !greek ? 0x39E : cp);
+                }
+            }
+        }
+        HashSet<EmojiSequence> emojis = new HashSet<>();
+        Group group = spec.detailsGroup(ctx, emojis);
+        return new Result(labelStart, end, null, norm.toString(), pretty.toString(), group, emojis.toArray(new EmojiSequence[0]));
+    }
+    
+    // records a checkpoint every lookahead-safe NFC boundary
+    final ENSIP15.TokenCheckpoints hook = new ENSIP15.TokenCheckpoints() {
+        @Override
+        public boolean accept(NormalizerContext ctx, int i) {
+            return i + lookahead <= ctx.input.count && isCheckpoint(spec.derived(), ctx.input.array[i]);
+        }
+        @Override
+        public void mark(NormalizerContext ctx, int i) {
+            checkpoints.add(i);
+            checkpoints.add(ctx.output.count);
+            checkpoints.add(ctx.tokenEnds.count);
+        }
+    };
+    
+    // true if text before cp is unaffected by NFC of what follows
+    boolean isCheckpoint(ENSIP15.Derived d, int cp) {
+        if (ctx.text.count == 0 && ctx.output.count == ctx.tokenStart(ctx.tokenEnds.count)) return true; // no open text
+        int props = d.props.get(cp);
+        if ((props & ENSIP15.P_VALID) != 0) return spec.NF.isStableStarter(cp);
+        if ((props & ENSIP15.P_MAPPED) != 0) {
+            int off = props >>> ENSIP15.P_MAPPING_SHIFT;
+            return d.mappings[off] > 0 && spec.NF.isStableStarter(d.mappings[off + 1]);
+        }
+        return false;
+    }
+
+}
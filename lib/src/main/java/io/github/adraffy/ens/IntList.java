@@ -24,12 +24,27 @@ class IntList {
             add(x);
         }
     }
+    void add(int[] xs, int off, int len) {
+        if (array.length < count + len) {
+            array = Arrays.copyOf(array, Math.max(count << 1, count + len));
+        }
+        System.arraycopy(xs, off, array, count, len);
+        count += len;
+    }
     void add(IntList other) {
         for (int i = 0; i < other.count; i++) {
             add(other.array[i]);
         }
     }
     
+    boolean contentEquals(IntList other) {
+        if (count != other.count) return false;
+        for (int i = 0; i < count; i++) {
+            if (array[i] != other.array[i]) return false;
+        }
+        return true;
+    }
+    
     int pop() {
         return array[--count];
     }
@@ -4,9 +4,10 @@ public class InvalidLabelException extends RuntimeException {
    
     public final int pos;
     public final int end;
+    private String message; // formatted on demand
     
-    InvalidLabelException(int pos, int end, String message, NormException cause) {
-        super(message, cause);
+    InvalidLabelException(int pos, int end, NormException cause) {
+        super(null, cause, false, NormException.STACK_TRACES);
         this.pos = pos;
         this.end = end;
     }
@@ -14,5 +15,14 @@ public class InvalidLabelException extends RuntimeException {
     public NormException getError() {
         return (NormException)getCause();
     }
+    
+    @Override
+    public String getMessage() {
+        if (message == null) {
+            NormError error = getError().error;
+            message = String.format("Invalid label \"%s\": %s", error.spec.safeImplode(error.input), getError().getMessage());
+        }
+        return message;
+    }
         
 }
@@ -0,0 +1,177 @@
+package io.github.adraffy.ens;
+
+// streaming keccak-256 (original padding, as used by ethereum)
+// reusable: digest() resets the state
+final class Keccak256 {
+
+    static final int RATE = 136; // bytes
+    static final int ROUNDS = 24;
+
+    static final long[] RC = {
+        0x0000000000000001L, 0x0000000000008082L, 0x800000000000808AL, 0x8000000080008000L,
+        0x000000000000808BL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+        0x000000000000008AL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000AL,
+        0x000000008000808BL, 0x800000000000008BL, 0x8000000000008089L, 0x8000000000008003L,
+        0x8000000000008002L, 0x8000000000000080L, 0x000000000000800AL, 0x800000008000000AL,
+        0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+
+    static byte[] hash(byte[] v) {
+        Keccak256 k = new Keccak256();
+        k.update(v, 0, v.length);
+        return k.digest();
+    }
+
+    private final long[] state = new long[25];
+    private int pos; // bytes absorbed into the current block
+
+    void update(int b) {
+        state[pos >>> 3] ^= (long)(b & 0xFF) << ((pos & 7) << 3);
+        if (++pos == RATE) {
+            permute();
+            pos = 0;
+        }
+    }
+
+    void update(byte[] v, int off, int len) {
+        for (int e = off + len; off < e; off++) update(v[off]);
+    }
+
+    void updateUTF8(int cp) {
+        if (cp < 0x80) {
+            update(cp);
+        } else if (cp < 0x800) {
+            update(0xC0 | (cp >> 6));
+            update(0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            update(0xE0 | (cp >> 12));
+            update(0x80 | ((cp >> 6) & 0x3F));
+            update(0x80 | (cp & 0x3F));
+        } else {
+            update(0xF0 | (cp >> 18));
+            update(0x80 | ((cp >> 12) & 0x3F));
+            update(0x80 | ((cp >> 6) & 0x3F));
+            update(0x80 | (cp & 0x3F));
+        }
+    }
+
+    byte[] digest() {
+        byte[] v = new byte[32];
+        digest(v, 0);
+        return v;
+    }
+
+    void digest(byte[] out, int off) {
+        state[pos >>> 3] ^= 0x01L << ((pos & 7) << 3);
+        state[(RATE - 1) >>> 3] ^= 0x80L << (((RATE - 1) & 7) << 3);
+        permute();
+        for (int i = 0; i < 32; i++) {
+            out[off + i] = (byte)(state[i >>> 3] >>> ((i & 7) << 3));
+        }
+        reset();
+    }
+
+    void reset() {
+        for (int i = 0; i < 25; i++) state[i] = 0;
+        pos = 0;
+    }
+
+    // keccak-f[1600], unrolled
+    private void permute() {
+        long[] a = state;
+        long a00 = a[0], a01 = a[1], a02 = a[2], a03 = a[3], a04 = a[4];
+        long a05 = a[5], a06 = a[6], a07 = a[7], a08 = a[8], a09 = a[9];
+        long a10 = a[10], a11 = a[11], a12 = a[12], a13 = a[13], a14 = a[14];
+        long a15 = a[15], a16 = a[16], a17 = a[17], a18 = a[18], a19 = a[19];
+        long a20 = a[20], a21 = a[21], a22 = a[22], a23 = a[23], a24 = a[24];
+        long c0, c1, c2, c3, c4, d0, d1, d2, d3, d4;
+        for (int round = 0; round < ROUNDS; round++) {
+            // theta
+            c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+            d0 = c4 ^ Long.rotateLeft(c1, 1);
+            d1 = c0 ^ Long.rotateLeft(c2, 1);
+            d2 = c1 ^ Long.rotateLeft(c3, 1);
+            d3 = c2 ^ Long.rotateLeft(c4, 1);
+            d4 = c3 ^ Long.rotateLeft(c0, 1);
+            a00 ^= d0; a05 ^= d0; a10 ^= d0; a15 ^= d0; a20 ^= d0;
+            a01 ^= d1; a06 ^= d1; a11 ^= d1; a16 ^= d1; a21 ^= d1;
+            a02 ^= d2; a07 ^= d2; a12 ^= d2; a17 ^= d2; a22 ^= d2;
+            a03 ^= d3; a08 ^= d3; a13 ^= d3; a18 ^= d3; a23 ^= d3;
+            a04 ^= d4; a09 ^= d4; a14 ^= d4; a19 ^= d4; a24 ^= d4;
+            // rho + pi
+            c1 = Long.rotateLeft(a01, 1);
+            a01 = Long.rotateLeft(a06, 44);
+            a06 = Long.rotateLeft(a09, 20);
+            a09 = Long.rotateLeft(a22, 61);
+            a22 = Long.rotateLeft(a14, 39);
+            a14 = Long.rotateLeft(a20, 18);
+            a20 = Long.rotateLeft(a02, 62);
+            a02 = Long.rotateLeft(a12, 43);
+            a12 = Long.rotateLeft(a13, 25);
+            a13 = Long.rotateLeft(a19, 8);
+            a19 = Long.rotateLeft(a23, 56);
+            a23 = Long.rotateLeft(a15, 41);
+            a15 = Long.rotateLeft(a04, 27);
+            a04 = Long.rotateLeft(a24, 14);
+            a24 = Long.rotateLeft(a21, 2);
+            a21 = Long.rotateLeft(a08, 55);
+            a08 = Long.rotateLeft(a16, 45);
+            a16 = Long.rotateLeft(a05, 36);
+            a05 = Long.rotateLeft(a03, 28);
+            a03 = Long.rotateLeft(a18, 21);
+            a18 = Long.rotateLeft(a17, 15);
+            a17 = Long.rotateLeft(a11, 10);
+            a11 = Long.rotateLeft(a07, 6);
+            a07 = Long.rotateLeft(a10, 3);
+            a10 = c1;
+            // chi
+            c0 = a00 ^ (~a01 & a02);
+            c1 = a01 ^ (~a02 & a03);
+            a02 ^= ~a03 & a04;
+            a03 ^= ~a04 & a00;
+            a04 ^= ~a00 & a01;
+            a00 = c0;
+            a01 = c1;
+            c0 = a05 ^ (~a06 & a07);
+            c1 = a06 ^ (~a07 & a08);
+            a07 ^= ~a08 & a09;
+            a08 ^= ~a09 & a05;
+            a09 ^= ~a05 & a06;
+            a05 = c0;
+            a06 = c1;
+            c0 = a10 ^ (~a11 & a12);
+            c1 = a11 ^ (~a12 & a13);
+            a12 ^= ~a13 & a14;
+            a13 ^= ~a14 & a10;
+            a14 ^= ~a10 & a11;
+            a10 = c0;
+            a11 = c1;
+            c0 = a15 ^ (~a16 & a17);
+            c1 = a16 ^ (~a17 & a18);
+            a17 ^= ~a18 & a19;
+            a18 ^= ~a19 & a15;
+            a19 ^= ~a15 & a16;
+            a15 = c0;
+            a16 = c1;
+            c0 = a20 ^ (~a21 & a22);
+            c1 = a21 ^ (~a22 & a23);
+            a22 ^= ~a23 & a24;
+            a23 ^= ~a24 & a20;
+            a24 ^= ~a20 & a21;
+            a20 = c0;
+            a21 = c1;
+            // iota
+            a00 ^= RC[round];
+        }
+        a[0] = a00; a[1] = a01; a[2] = a02; a[3] = a03; a[4] = a04;
+        a[5] = a05; a[6] = a06; a[7] = a07; a[8] = a08; a[9] = a09;
+        a[10] = a10; a[11] = a11; a[12] = a12; a[13] = a13; a[14] = a14;
+        a[15] = a15; a[16] = a16; a[17] = a17; a[18] = a18; a[19] = a19;
+        a[20] = a20; a[21] = a21; a[22] = a22; a[23] = a23; a[24] = a24;
+    }
+
+}
@@ -0,0 +1,108 @@
+package io.github.adraffy.ens;
+
+// opt-in memoization of ENSIP15 by label, shared across names
+// attach to a NormalizerContext: new NormalizerContext(cache)
+// invalid labels are cached as their NormError (relocated on reuse)
+// thread-safe, hit rate is independent of any NormCache
+// normalized and beautified labels each get half of the limit
+public class LabelCache {
+    
+    // name[start, end) without a substring
+    // equals() the String of the same chars
+    static final class Key {
+        
+        CharSequence s;
+        int start;
+        int end;
+        int hash;
+        
+        Key set(CharSequence s, int start, int end) {
+            this.s = s;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + s.charAt(i); // String.hashCode()
+            }
+            hash = h;
+            return this;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof String)) return false;
+            String other = (String)o;
+            if (other.length() != end - start) return false;
+            for (int i = start, j = 0; i < end; i++, j++) {
+                if (s.charAt(i) != other.charAt(j)) return false;
+            }
+            return true;
+        }
+        
+        @Override
+        public String toString() {
+            return s.subSequence(start, end).toString();
+        }
+    
+    }
+    
+    static public LabelCache ofEntries(int maxEntries) {
+        return new LabelCache(maxEntries, maxEntries, (k, v) -> 1);
+    }
+    
+    static public LabelCache ofBytes(long maxBytes) {
+        return new LabelCache(maxBytes, maxBytes / 128, NormCache::weighBytes);
+    }
+    
+    // value is either the label output or a NormError
+    final BoundedCache<String,Object> normalized;
+    final BoundedCache<String,Object> beautified;
+    
+    LabelCache(long maxWeight, long expected, BoundedCache.Weigher<String,Object> weigher) {
+        normalized = new BoundedCache<>(maxWeight / 2, expected / 2, weigher);
+        beautified = new BoundedCache<>(maxWeight / 2, expected / 2, weigher);
+    }
+    
+    public void clear() {
+        normalized.clear();
+        beautified.clear();
+    }
+    
+    public long hits() {
+        return normalized.hits.sum() + beautified.hits.sum();
+    }
+    
+    public long misses() {
+        return normalized.misses.sum() + beautified.misses.sum();
+    }
+    
+    public long evictions() {
+        return normalized.evictions.sum() + beautified.evictions.sum();
+    }
+    
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+    
+    public long size() {
+        return normalized.size() + beautified.size();
+    }
+    
+    // entries or approximate bytes, depending on construction
+    public long weight() {
+        return normalized.weight() + beautified.weight();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("LabelCache[size=%d hits=%d misses=%d evictions=%d hitRate=%.3f]", size(), hits(), misses(), evictions(), hitRate());
+    }
+
+}
@@ -0,0 +1,47 @@
+package io.github.adraffy.ens;
+
+// open-addressing: long -> int
+// note: key 0 is reserved
+final class LongIntMap {
+    
+    final long[] keys;
+    final int[] values;
+    final int shift;
+    int size;
+    
+    LongIntMap(int capacity) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity << 1) - 1); // load <= 0.5
+        keys = new long[1 << bits];
+        values = new int[1 << bits];
+        shift = 64 - bits;
+    }
+    
+    private int slot(long key) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+    
+    void put(long key, int value) {
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (long k; (k = keys[i]) != 0; i = (i + 1) & mask) {
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        if (size + 1 > keys.length >> 1) throw new IllegalStateException("capacity");
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+    
+    int get(long key, int missing) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == 0) return missing;
+            if (k == key) return values[i];
+        }
+    }
+    
+}
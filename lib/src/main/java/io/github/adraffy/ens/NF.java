@@ -1,13 +1,14 @@
 package io.github.adraffy.ens;
 
-import java.util.HashMap;
-
 public class NF {
     
     static final int SHIFT = 24;
     static final int MASK = (1 << SHIFT) - 1;
+    static final int QC = 1 << (SHIFT - 1); // NFC_QC is No or Maybe
+    static final int DECOMP_MASK = QC - 1;
     static final int NONE = -1;
-
+    static final int QC_MIN = 0x300; // below: starter, NFC_QC=Yes
+    
     static final int S0 = 0xAC00;
     static final int L0 = 0x1100;
     static final int V0 = 0x1161;
@@ -31,51 +32,59 @@ public class NF {
     static int unpackCP(int packed) {
         return packed & MASK;
     }
+    static long pairKey(int a, int b) {
+        return ((long)a << 21) | b;
+    }
     
     public final String unicodeVersion;
     
     final ReadOnlyIntSet exclusions;
     final ReadOnlyIntSet quickCheck;
-    final HashMap<Integer,int[]> decomps = new HashMap<>();
-    final HashMap<Integer,HashMap<Integer,Integer>> recomps = new HashMap<>();
-    final HashMap<Integer,Integer> ranks = new HashMap<>();
+    final CodepointTrie info; // rank (packed) | QC | decomp
+    final int[] decomps; // decomp = offset << 2 | length
+    final LongIntMap recomps; // pairKey(a, b) -> composed
     
     public NF(Decoder dec) {
         unicodeVersion = dec.readString();
         exclusions = ReadOnlyIntSet.fromOwnedUnsorted(dec.readUnique());
         quickCheck = ReadOnlyIntSet.fromOwnedUnsorted(dec.readUnique());
+        CodepointTrie.Builder builder = new CodepointTrie.Builder();
         int[] decomp1 = dec.readSortedUnique();
         int[] decomp1A = dec.readUnsortedDeltas(decomp1.length);
-        for (int i = 0; i < decomp1.length; i++) {
-            decomps.put(decomp1[i], new int[] { decomp1A[i] });
-        }
         int[] decomp2 = dec.readSortedUnique();
         int n = decomp2.length;
         int[] decomp2A = dec.readUnsortedDeltas(n);
         int[] decomp2B = dec.readUnsortedDeltas(n);
+        decomps = new int[decomp1.length + (n << 1)];
+        int pos = 0;
+        for (int i = 0; i < decomp1.length; i++) {
+            builder.set(decomp1[i], (pos << 2) | 1);
+            decomps[pos++] = decomp1A[i];
+        }
+        recomps = new LongIntMap(n);
         for (int i = 0; i < n; i++) {
             int cp = decomp2[i];
             int cpA = decomp2A[i];
             int cpB = decomp2B[i];
-            decomps.put(cp, new int[] { cpB, cpA }); // reversed
+            builder.set(cp, (pos << 2) | 2);
+            decomps[pos++] = cpB; // reversed
+            decomps[pos++] = cpA;
             if (!exclusions.contains(cp)) {
-                HashMap<Integer,Integer> recomp = recomps.get(cpA);
-                if (recomp == null) {
-                    recomp = new HashMap<>();
-                    recomps.put(cpA, recomp);
-                }
-                recomp.put(cpB, cp);
+                recomps.put(pairKey(cpA, cpB), cp);
             }
         }
         for (int rank = 0; ; ) {
             rank += 1 << SHIFT;
             int[] v = dec.readUnique();
             if (v.length == 0) break;
-            Integer boxed = rank;
             for (int cp: v) {
-                ranks.put(cp, boxed);
+                builder.or(cp, rank);
             }
         }
+        for (int cp: quickCheck.array) {
+            builder.or(cp, QC);
+        }
+        info = builder.build();
     }
     
     int composePair(int a, int b)  {
@@ -84,90 +93,83 @@ public class NF {
         } else if (isHangul(a) && b > T0 && b < T1 && (a - S0) % T_COUNT == 0) {
             return a + (b - T0);
         } else {
-            HashMap<Integer,Integer> map = recomps.get(a);
-            if (map != null) {
-                Integer boxed = map.get(b);
-                if (boxed != null) {
-                    return boxed;
-                }                
-            }
-            return NONE;
+            return recomps.get(pairKey(a, b), NONE);
         }
     }
     
-    class Packer {
-        final IntList buf = new IntList();
+    // packed = decomposed cps[off, off + len) with combining class, in canonical order
+    // stack is scratch
+    void decompose(int[] cps, int off, int len, IntList packed, IntList stack) {
+        packed.count = 0;
+        stack.count = 0;
         boolean check = false;
-        void add(int cp) {
-            int cc = ranks.getOrDefault(cp, 0);
-            if (cc != 0) {
-                check = true;
-                cp |= cc;
-            }
-            buf.add(cp);
-        }
-        void fixOrder() {
-            if (!check) return;
-            int[] v = buf.array; 
-            int prev = unpackCC(v[0]);
-            for (int i = 1, e = buf.count; i < e; i++) {
-                int cc = unpackCC(v[i]);
-                if (cc == 0 || prev <= cc) {
-                    prev = cc;
-                    continue;
-                }
-                int j = i - 1;
-                while (true) {
-                    int temp = v[j];
-                    v[j] = v[j + 1];
-                    v[j + 1] = temp;
-                    if (j == 0) break;
-                    prev = unpackCC(v[--j]);
-                    if (prev <= cc) break;
-                }
-                prev = unpackCC(v[i]);
-            }
-        }
-    }
-    
-    int[] decomposed(int[] cps) {
-        Packer p = new Packer();
-        IntList buf = new IntList();
-        for (int cp0: cps) {
-            int cp = cp0;
+        for (int i = off, e = off + len; i < e; i++) {
+            int cp = cps[i];
             while (true) {
                 if (cp < 0x80) {
-                    p.buf.add(cp);
+                    packed.add(cp);
                 } else if (isHangul(cp)) {
                     int s_index = cp - S0;
                     int l_index = s_index / N_COUNT;
                     int v_index = (s_index % N_COUNT) / T_COUNT;
                     int t_index = s_index % T_COUNT;
-                    p.add(L0 + l_index);
-                    p.add(V0 + v_index);
-                    if (t_index > 0) p.add(T0 + t_index);
+                    check |= pack(packed, L0 + l_index);
+                    check |= pack(packed, V0 + v_index);
+                    if (t_index > 0) check |= pack(packed, T0 + t_index);
                 } else {
-                    int[] decomp = decomps.get(cp);
-                    if (decomp != null) {
-                        for (int x: decomp) buf.add(x);
+                    int v = info.get(cp);
+                    int decomp = v & DECOMP_MASK;
+                    if (decomp != 0) {
+                        for (int j = decomp >> 2, f = j + (decomp & 3); j < f; j++) stack.add(decomps[j]);
                     } else {
-                        p.add(cp);
+                        int cc = v & ~MASK;
+                        check |= cc != 0;
+                        packed.add(cp | cc);
                     }
                 }
-                if (buf.count == 0) break;
-                cp = buf.pop();
+                if (stack.count == 0) break;
+                cp = stack.pop();
+            }
+        }
+        if (check) fixOrder(packed.array, packed.count);
+    }
+    
+    // returns true if cp has a combining class
+    boolean pack(IntList packed, int cp) {
+        int cc = info.get(cp) & ~MASK;
+        packed.add(cp | cc);
+        return cc != 0;
+    }
+    
+    static void fixOrder(int[] v, int n) {
+        int prev = unpackCC(v[0]);
+        for (int i = 1; i < n; i++) {
+            int cc = unpackCC(v[i]);
+            if (cc == 0 || prev <= cc) {
+                prev = cc;
+                continue;
             }
+            int j = i - 1;
+            while (true) {
+                int temp = v[j];
+                v[j] = v[j + 1];
+                v[j + 1] = temp;
+                if (j == 0) break;
+                prev = unpackCC(v[--j]);
+                if (prev <= cc) break;
+            }
+            prev = unpackCC(v[i]);
         }
-        p.fixOrder();
-        return p.buf.consume();
     }
     
-    int[] composedFromPacked(int[] packed) {
-        IntList cps = new IntList();
-        IntList stack = new IntList();
+    // appends the composition of packed[0, n) to cps
+    // stack is scratch
+    void composeFromPacked(int[] packed, int n, IntList cps, IntList stack) {
+        stack.count = 0;
         int prev_cp = NONE;
         int prev_cc = 0;
-        for (int p: packed) {
+        for (int i = 0; i < n; i++) {
+            int p = packed[i];
             int cc = unpackCC(p);
             int cp = unpackCP(p);
             if (prev_cp == NONE) {
@@ -203,26 +205,76 @@ public class NF {
             cps.add(prev_cp);
             cps.add(stack);
         }
-        return cps.consume();
     }
     
-    public int[] NFD(int... cps) {
-        int[] v = decomposed(cps);
-        for (int i = 0, e = v.length; i < e; i++) {
-            v[i] = unpackCP(v[i]);
+    // https://unicode.org/reports/tr15/#Detecting_Normalization_Forms
+    // returns the end of the longest prefix of cps[off, end) that is unchanged by NFC:
+    // end if the input is NFC, otherwise the last starter before the first codepoint that
+    // isn't NFC_QC=Yes or is out of canonical order
+    int quickCheckNFC(int[] cps, int off, int end) {
+        int starter = off;
+        int prev = 0;
+        for (int i = off; i < end; i++) {
+            int cp = cps[i];
+            if (cp < QC_MIN) {
+                starter = i;
+                prev = 0;
+                continue;
+            }
+            int v = info.get(cp);
+            int cc = unpackCC(v);
+            if ((v & QC) != 0 || (cc != 0 && prev > cc)) return starter;
+            if (cc == 0) starter = i;
+            prev = cc;
         }
-        return v;
+        return end;
+    }
+    
+    // starter with NFC_QC=Yes: NFC never composes or reorders across it
+    boolean isStableStarter(int cp) {
+        return cp < QC_MIN || (info.get(cp) & ~DECOMP_MASK) == 0;
+    }
+    
+    // appends the NFD/NFC of cps[off, off + len) to out
+    // packed and stack are scratch
+    void NFD(int[] cps, int off, int len, IntList out, IntList packed, IntList stack) {
+        decompose(cps, off, len, packed, stack);
+        for (int i = 0; i < packed.count; i++) {
+            out.add(unpackCP(packed.array[i]));
+        }
+    }
+    void NFC(int[] cps, int off, int len, IntList out, IntList packed, IntList stack) {
+        int end = off + len;
+        int safe = quickCheckNFC(cps, off, end);
+        out.add(cps, off, safe - off);
+        if (safe < end) {
+            decompose(cps, safe, end - safe, packed, stack);
+            composeFromPacked(packed.array, packed.count, out, stack);
+        }
+    }
+    
+    public int[] NFD(int... cps) {
+        IntList out = new IntList(cps.length);
+        NFD(cps, 0, cps.length, out, new IntList(cps.length), new IntList());
+        return out.consume();
     }
+    // returns cps if already NFC
     public int[] NFC(int... cps) {
-        return composedFromPacked(decomposed(cps));
+        if (quickCheckNFC(cps, 0, cps.length) == cps.length) return cps;
+        IntList out = new IntList(cps.length);
+        NFC(cps, 0, cps.length, out, new IntList(cps.length), new IntList());
+        return out.consume();
     }
     
     // convenience
     public String NFD(String s) {
         return StringUtils.implode(NFD(StringUtils.explode(s)));
     }
+    // returns s if already NFC
     public String NFC(String s) {
-        return StringUtils.implode(NFC(StringUtils.explode(s)));
+        int[] cps = StringUtils.explode(s);
+        int[] v = NFC(cps);
+        return v == cps ? s : StringUtils.implode(v);
     }    
     
 }
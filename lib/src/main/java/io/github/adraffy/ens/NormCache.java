@@ -0,0 +1,143 @@
+package io.github.adraffy.ens;
+
+// opt-in memoization of ENSIP15 by name
+// invalid names are cached as their NormError
+// each operation has its own cache with a third of the limit
+public class NormCache {
+    
+    // approximate retained bytes
+    static final int OBJECT_BYTES = 16;
+    static final int STRING_BYTES = 40; // String + char[] headers
+    static final int ENTRY_BYTES = 96; // map entry + node + value header
+    
+    static long stringBytes(String s) {
+        return STRING_BYTES + ((long)s.length() << 1);
+    }
+    
+    static long weighBytes(String name, Object value) {
+        long n = ENTRY_BYTES + stringBytes(name);
+        if (value instanceof String) {
+            if (value != name) n += stringBytes((String)value);
+        } else if (value instanceof NormDetails) {
+            NormDetails d = (NormDetails)value;
+            n += OBJECT_BYTES + stringBytes(d.name) + ENTRY_BYTES * (d.groups.size() + d.emojis.size());
+        } else {
+            n += ENTRY_BYTES; // NormError
+        }
+        return n;
+    }
+    
+    static public NormCache ofEntries(ENSIP15 ens, int maxEntries) {
+        return new NormCache(ens, maxEntries, maxEntries, (k, v) -> 1);
+    }
+    
+    static public NormCache ofBytes(ENSIP15 ens, long maxBytes) {
+        return new NormCache(ens, maxBytes, maxBytes / 256, NormCache::weighBytes);
+    }
+    
+    public final ENSIP15 spec;
+    final BoundedCache<String,Object> normalized;
+    final BoundedCache<String,Object> beautified;
+    final BoundedCache<String,Object> details;
+    
+    NormCache(ENSIP15 ens, long maxWeight, long expected, BoundedCache.Weigher<String,Object> weigher) {
+        spec = ens;
+        normalized = new BoundedCache<>(maxWeight / 3, expected / 3, weigher);
+        beautified = new BoundedCache<>(maxWeight / 3, expected / 3, weigher);
+        details = new BoundedCache<>(maxWeight / 3, expected / 3, weigher);
+    }
+    
+    // value is either the result or a NormError
+    static Object value(NormResult result) {
+        return result.isValid() ? result.name : result.error;
+    }
+    
+    public NormResult tryNormalize(String name) {
+        Object value = normalized.get(name);
+        if (value == null) {
+            NormResult result = spec.tryNormalize(name);
+            normalized.put(name, value(result));
+            return result;
+        }
+        return value instanceof NormError ? new NormResult(name, null, (NormError)value) : new NormResult(name, (String)value, null);
+    }
+    
+    public String normalize(String name) {
+        Object value = normalized.get(name);
+        if (value == null) {
+            NormResult result = spec.tryNormalize(name);
+            normalized.put(name, value = value(result));
+        }
+        if (value instanceof NormError) {
+            throw ((NormError)value).toException();
+        }
+        return (String)value;
+    }
+    
+    public String beautify(String name) {
+        Object value = beautified.get(name);
+        if (value == null) {
+            NormalizerContext ctx = new NormalizerContext();
+            value = spec.tryBeautify(name, ctx);
+            if (value == null) value = ctx.error;
+            beautified.put(name, value);
+        }
+        if (value instanceof NormError) {
+            throw ((NormError)value).toException();
+        }
+        return (String)value;
+    }
+    
+    public NormDetails normalizeDetails(String name) {
+        Object value = details.get(name);
+        if (value == null) {
+            NormalizerContext ctx = new NormalizerContext();
+            value = spec.tryNormalizeDetails(name, ctx);
+            if (value == null) value = ctx.error;
+            details.put(name, value);
+        }
+        if (value instanceof NormError) {
+            throw ((NormError)value).toException();
+        }
+        return (NormDetails)value;
+    }
+    
+    public void clear() {
+        normalized.clear();
+        beautified.clear();
+        details.clear();
+    }
+    
+    public long hits() {
+        return normalized.hits.sum() + beautified.hits.sum() + details.hits.sum();
+    }
+    
+    public long misses() {
+        return normalized.misses.sum() + beautified.misses.sum() + details.misses.sum();
+    }
+    
+    public long evictions() {
+        return normalized.evictions.sum() + beautified.evictions.sum() + details.evictions.sum();
+    }
+    
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+    
+    public long size() {
+        return normalized.size() + beautified.size() + details.size();
+    }
+    
+    // entries or approximate bytes, depending on construction
+    public long weight() {
+        return normalized.weight() + beautified.weight() + details.weight();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("NormCache[size=%d hits=%d misses=%d evictions=%d hitRate=%.3f]", size(), hits(), misses(), evictions(), hitRate());
+    }
+
+}
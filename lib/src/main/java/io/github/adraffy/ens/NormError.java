@@ -0,0 +1,95 @@
+package io.github.adraffy.ens;
+
+public class NormError {
+    
+    public final String kind;
+    public final int start; // label range
+    public final int end;
+    public final int cp; // -1 if not applicable
+    public final Group group; // nullable
+    public final Group other; // nullable
+    
+    final ENSIP15 spec;
+    final int[] input; // label codepoints
+    final EmojiSequence emoji; // nullable
+    final int[] cps; // nullable
+    
+    NormError(ENSIP15 spec, String kind, int start, int end, int[] input, int cp, Group group, Group other, EmojiSequence emoji, int[] cps) {
+        this.spec = spec;
+        this.kind = kind;
+        this.start = start;
+        this.end = end;
+        this.input = input;
+        this.cp = cp;
+        this.group = group;
+        this.other = other;
+        this.emoji = emoji;
+        this.cps = cps;
+    }
+    
+    // same error for a label at [start, end)
+    NormError at(int start, int end) {
+        if (start == this.start && end == this.end) return this;
+        return new NormError(spec, kind, start, end, input, cp, group, other, emoji, cps);
+    }
+    
+    // nullable
+    String reason() {
+        switch (kind) {
+            case ENSIP15.DISALLOWED_CHARACTER:
+            case ENSIP15.NSM_DUPLICATE:
+            case ENSIP15.CM_LEADING: {
+                return spec.safeCodepoint(cp);
+            }
+            case ENSIP15.ILLEGAL_MIXTURE: {
+                String conflict = spec.safeCodepoint(cp);
+                if (other != null) {
+                    conflict = String.format("%s %s", other, conflict);
+                }
+                return String.format("%s + %s", group, conflict);
+            }
+            case ENSIP15.WHOLE_CONFUSABLE: {
+                return String.format("%s/%s", group, other);
+            }
+            case ENSIP15.NSM_EXCESSIVE: {
+                return String.format("%s (%d/%d)", spec.safeImplode(cps), cps.length - 1, spec.maxNonSpacingMarks);
+            }
+            case ENSIP15.CM_AFTER_EMOJI: {
+                return String.format("%s + %s", emoji.form, spec.safeCodepoint(cp));
+            }
+            case ENSIP15.FENCED_LEADING:
+            case ENSIP15.FENCED_TRAILING: {
+                return spec.fenced.get(cp);
+            }
+            case ENSIP15.FENCED_ADJACENT: {
+                return String.format("%s + %s", spec.fenced.get(cps[0]), spec.fenced.get(cps[1]));
+            }
+            case ENSIP15.INVALID_LABEL_EXTENSION: {
+                return StringUtils.implode(cps);
+            }
+            case ENSIP15.INVALID_UTF8: {
+                return StringUtils.toHexSequence(cps); // bytes
+            }
+            default: return null;
+        }
+    }
+    
+    NormException toNormException() {
+        switch (kind) {
+            case ENSIP15.DISALLOWED_CHARACTER: return new DisallowedCharacterException(this);
+            case ENSIP15.ILLEGAL_MIXTURE: return new IllegalMixtureException(this);
+            case ENSIP15.WHOLE_CONFUSABLE: return new ConfusableException(this);
+            default: return new NormException(this);
+        }
+    }
+    
+    public InvalidLabelException toException() {
+        return new InvalidLabelException(start, end, toNormException());
+    }
+    
+    @Override
+    public String toString() {
+        return cp < 0 ? String.format("%s[%d,%d]", kind, start, end) : String.format("%s[%d,%d]{%s}", kind, start, end, StringUtils.toHex(cp).toUpperCase());
+    }
+    
+}
@@ -2,18 +2,38 @@ package io.github.adraffy.ens;
 
 public class NormException extends RuntimeException {
     
+    // stack traces are captured unless -Dio.github.adraffy.ens.stackTraces=false
+    static final boolean STACK_TRACES = !"false".equals(System.getProperty("io.github.adraffy.ens.stackTraces"));
+    
+    static final String UNFORMATTED = new String(); // by identity
+    
     public final String kind;
-    public final String reason;
+    final NormError error;
+    String reason = UNFORMATTED; // nullable, formatted on demand
+    String message; // formatted on demand
     
-    NormException(String kind) {
-        super(kind);
-        this.kind = kind;
-        this.reason = null;
+    NormException(NormError error) {
+        super(null, null, false, STACK_TRACES);
+        this.kind = error.kind;
+        this.error = error;
     }
-    NormException(String kind, String reason) {
-        super(String.format("%s: %s", kind, reason));
-        this.kind = kind;
-        this.reason = reason;
+    
+    // nullable
+    public String getReason() {
+        String s = reason;
+        if (s == UNFORMATTED) {
+            reason = s = error.reason();
+        }
+        return s;
+    }
+    
+    @Override
+    public String getMessage() {
+        if (message == null) {
+            String s = getReason();
+            message = s == null ? kind : String.format("%s: %s", kind, s);
+        }
+        return message;
     }
     
 }
@@ -0,0 +1,20 @@
+package io.github.adraffy.ens;
+
+// instrumentation of ENSIP15 (see ENSIP15.setMetrics and NormStats)
+// called on the normalizing threads: must be thread-safe and cheap
+// labels served by a LabelCache are not observed
+public interface NormMetrics {
+    
+    // every processed label: group if valid (null if not validated), otherwise error
+    void label(Group group, NormError error);
+    
+    // every emoji of a valid label
+    void emoji(EmojiSequence emoji);
+    
+    // time 1 in n labels, or names on the ascii fast path (0 = never)
+    int sampleInterval();
+    
+    // time spent in a stage of a sampled label (or name)
+    void stage(NormStage stage, long nanos);
+
+}
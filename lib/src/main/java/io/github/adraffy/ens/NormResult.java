@@ -0,0 +1,24 @@
+package io.github.adraffy.ens;
+
+public class NormResult {
+    
+    public final String input;
+    public final String name; // null if invalid
+    public final NormError error; // null if valid
+    
+    NormResult(String input, String name, NormError error) {
+        this.input = input;
+        this.name = name;
+        this.error = error;
+    }
+    
+    public boolean isValid() {
+        return error == null;
+    }
+    
+    @Override
+    public String toString() {
+        return isValid() ? name : error.toString();
+    }
+    
+}
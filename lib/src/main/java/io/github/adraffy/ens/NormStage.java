@@ -0,0 +1,17 @@
+package io.github.adraffy.ens;
+
+// timed stages of a label (see NormMetrics)
+public enum NormStage {
+    
+    ASCII, // ascii fast path (whole name, every label is ascii)
+    EXPLODE, // codepoints (or UTF-8 decoding)
+    TOKENIZE, // emoji, mapping, ignoring (excluding NFC)
+    NFC,
+    MARKS, // combining marks, fenced
+    DETERMINE_GROUP,
+    CHECK_GROUP,
+    CHECK_WHOLE;
+    
+    static final NormStage[] ALL = values();
+
+}
@@ -0,0 +1,160 @@
+package io.github.adraffy.ens;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// NormMetrics backed by LongAdder counters (no contention between threads)
+// stage latencies are histograms of power-of-2 nanosecond buckets
+public class NormStats implements NormMetrics {
+    
+    static final int BUCKETS = 40; // up to ~9 minutes
+    
+    static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+    
+    static <K> LongAdder counter(ConcurrentHashMap<K,LongAdder> map, K key) {
+        LongAdder adder = map.get(key); // avoid locking when present
+        return adder != null ? adder : map.computeIfAbsent(key, k -> new LongAdder());
+    }
+    
+    static <K> Map<K,Long> snapshot(ConcurrentHashMap<K,LongAdder> map) {
+        HashMap<K,Long> ret = new HashMap<>();
+        map.forEach((k, v) -> ret.put(k, v.sum()));
+        return ret;
+    }
+    
+    final int sampleInterval;
+    final LongAdder labels = new LongAdder();
+    final LongAdder invalid = new LongAdder();
+    final ConcurrentHashMap<String,LongAdder> errors = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Group,LongAdder> groups = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<EmojiSequence,LongAdder> emojis = new ConcurrentHashMap<>();
+    final LongAdder[] stageNanos = new LongAdder[NormStage.ALL.length];
+    final LongAdder[][] histograms = new LongAdder[NormStage.ALL.length][BUCKETS];
+    
+    // counts only
+    public NormStats() {
+        this(0);
+    }
+    
+    // also times 1 in sampleInterval labels
+    public NormStats(int sampleInterval) {
+        if (sampleInterval < 0) throw new IllegalArgumentException("sampleInterval");
+        this.sampleInterval = sampleInterval;
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+            for (int j = 0; j < BUCKETS; j++) {
+                histograms[i][j] = new LongAdder();
+            }
+        }
+    }
+    
+    @Override
+    public void label(Group group, NormError error) {
+        labels.increment();
+        if (error != null) {
+            invalid.increment();
+            counter(errors, error.kind).increment();
+        } else if (group != null) {
+            counter(groups, group).increment();
+        }
+    }
+    
+    @Override
+    public void emoji(EmojiSequence emoji) {
+        counter(emojis, emoji).increment();
+    }
+    
+    @Override
+    public int sampleInterval() {
+        return sampleInterval;
+    }
+    
+    @Override
+    public void stage(NormStage stage, long nanos) {
+        int i = stage.ordinal();
+        stageNanos[i].add(nanos);
+        histograms[i][bucket(nanos)].increment();
+    }
+    
+    public long labels() {
+        return labels.sum();
+    }
+    
+    public long invalid() {
+        return invalid.sum();
+    }
+    
+    // error kind -> count
+    public Map<String,Long> errors() {
+        return snapshot(errors);
+    }
+    
+    // group of valid labels -> count
+    public Map<Group,Long> groups() {
+        return snapshot(groups);
+    }
+    
+    // emoji -> count
+    public Map<EmojiSequence,Long> emojis() {
+        return snapshot(emojis);
+    }
+    
+    // number of timed labels that reached stage
+    public long samples(NormStage stage) {
+        long n = 0;
+        for (LongAdder a: histograms[stage.ordinal()]) n += a.sum();
+        return n;
+    }
+    
+    public double meanNanos(NormStage stage) {
+        long n = samples(stage);
+        return n == 0 ? 0 : (double)stageNanos[stage.ordinal()].sum() / n;
+    }
+    
+    // upper bound of the bucket containing quantile q (0-1)
+    public long quantileNanos(NormStage stage, double q) {
+        LongAdder[] buckets = histograms[stage.ordinal()];
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts[i] = buckets[i].sum();
+        }
+        if (total == 0) return 0;
+        long rank = (long)Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) return (1L << i) - 1;
+        }
+        return (1L << (BUCKETS - 1)) - 1;
+    }
+    
+    public void reset() {
+        labels.reset();
+        invalid.reset();
+        errors.clear();
+        groups.clear();
+        emojis.clear();
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i].reset();
+            for (LongAdder a: histograms[i]) a.reset();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("NormStats[labels=%d invalid=%d errors=%s", labels(), invalid(), errors()));
+        for (NormStage stage: NormStage.ALL) {
+            long n = samples(stage);
+            if (n == 0) continue;
+            sb.append(String.format(" %s=%.0fns(p99<%d)", stage, meanNanos(stage), quantileNanos(stage, 0.99)));
+        }
+        return sb.append(']').toString();
+    }
+
+}
@@ -0,0 +1,122 @@
+package io.github.adraffy.ens;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// state and scratch buffers of the label pipeline
+// reusable but not thread-safe: keep one per thread (or pool them)
+// in steady-state, normalizing through a context only allocates the output
+public final class NormalizerContext {
+    
+    int start; // current label range
+    int end;
+    final IntList input = new IntList(); // current label codepoints
+    final IntList output = new IntList(); // current label output (every token)
+    final IntList tokenEnds = new IntList(); // end of each token in output
+    final ArrayList<EmojiSequence> tokenEmojis = new ArrayList<>(); // null if text
+    Group group;
+    NormError error;
+    
+    // scratch
+    final IntList text = new IntList(); // pending text token, then text-only output
+    final IntList unique = new IntList();
+    final IntList decomposed = new IntList();
+    final IntList packed = new IntList(); // NF
+    final IntList stack = new IntList(); // NF
+    final StringBuilder sb = new StringBuilder();
+    long[] groupMask; // candidate groups
+    long[] makerMask; // confusable complements
+    long[] sharedMask; // groups containing shared codepoints
+    
+    final LabelCache labelCache; // nullable
+    final LabelCache.Key labelKey;
+    
+    public NormalizerContext() {
+        this(null);
+    }
+    
+    // labels are memoized in cache (which may be shared between threads)
+    public NormalizerContext(LabelCache cache) {
+        labelCache = cache;
+        labelKey = cache == null ? null : new LabelCache.Key();
+    }
+    
+    // metrics
+    NormMetrics metrics; // null if disabled
+    boolean timing; // current label is sampled
+    long mark;
+    int ran; // bitmask of timed stages
+    final long[] stageNanos = new long[NormStage.ALL.length];
+    
+    void observe(NormMetrics m) {
+        metrics = m;
+        timing = false;
+    }
+    
+    // true if the next label (or ascii name) should be timed
+    static boolean sample(NormMetrics m) {
+        int n = m.sampleInterval();
+        return n > 0 && (n == 1 || ThreadLocalRandom.current().nextInt(n) == 0);
+    }
+    
+    void beginLabel() {
+        group = null;
+        error = null;
+        timing = sample(metrics);
+        if (timing) {
+            ran = 0;
+            mark = System.nanoTime();
+        }
+    }
+    
+    // time since the last lap is attributed to stage
+    void lap(NormStage stage) {
+        long t = System.nanoTime();
+        int i = stage.ordinal();
+        stageNanos[i] = ((ran & (1 << i)) == 0 ? 0 : stageNanos[i]) + t - mark;
+        ran |= 1 << i;
+        mark = t;
+    }
+    
+    void endLabel() {
+        NormMetrics m = metrics;
+        if (error != null) {
+            m.label(null, error);
+        } else {
+            m.label(group, null);
+            for (int i = 0; i < tokenEnds.count; i++) {
+                EmojiSequence e = tokenEmojis.get(i);
+                if (e != null) m.emoji(e);
+            }
+        }
+        if (timing) {
+            timing = false;
+            for (NormStage stage: NormStage.ALL) {
+                if ((ran & (1 << stage.ordinal())) != 0) {
+                    m.stage(stage, stageNanos[stage.ordinal()]);
+                }
+            }
+        }
+    }
+    
+    int tokenStart(int i) {
+        return i == 0 ? 0 : tokenEnds.array[i - 1];
+    }
+    
+    void addToken(EmojiSequence emoji) {
+        tokenEnds.add(output.count);
+        tokenEmojis.add(emoji);
+    }
+    
+    // copy of the current tokens
+    List<OutputToken> tokens() {
+        ArrayList<OutputToken> tokens = new ArrayList<>(tokenEnds.count);
+        for (int i = 0; i < tokenEnds.count; i++) {
+            tokens.add(new OutputToken(Arrays.copyOfRange(output.array, tokenStart(i), tokenEnds.array[i]), tokenEmojis.get(i)));
+        }
+        return tokens;
+    }
+
+}
@@ -6,17 +6,94 @@ public class ReadOnlyIntSet extends ReadOnlyIntList {
     
     static public final ReadOnlyIntSet EMPTY = new ReadOnlyIntSet(new int[0]);
     
+    // contains() strategy, chosen by shape
+    static final int SORTED = 0; // binary search of array
+    static final int RANGES = 1; // binary search of [start, end) pairs
+    static final int BITMAP = 2; // bit test relative to min
+    
     static ReadOnlyIntSet fromOwnedUnsorted(int[] v) {        
         Arrays.sort(v);
         return new ReadOnlyIntSet(v);
     }
     
-    ReadOnlyIntSet(int[] v) {
-        super(v);
+    static int chooseKind(int[] sorted) {
+        int n = sorted.length;
+        if (n < 8) return SORTED;
+        long span = (long)sorted[n - 1] - sorted[0] + 1;
+        if (span <= Math.max((long)n << 5, 1 << 15)) return BITMAP; // no larger than the array (or 4KB)
+        if (countRuns(sorted) <= n >> 2) return RANGES; // average run >= 4
+        return SORTED;
+    }
+    
+    static int countRuns(int[] sorted) {
+        int runs = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1] + 1) runs++;
+        }
+        return runs;
+    }
+    
+    final int kind;
+    final int min, max;
+    final long[] bits; // BITMAP
+    final int[] ranges; // RANGES
+    
+    ReadOnlyIntSet(int[] sorted) {
+        this(sorted, chooseKind(sorted));
+    }
+    ReadOnlyIntSet(int[] sorted, int kind) {
+        super(sorted);
+        this.kind = kind;
+        int n = sorted.length;
+        min = n == 0 ? 0 : sorted[0];
+        max = n == 0 ? -1 : sorted[n - 1];
+        if (kind == BITMAP) {
+            bits = new long[n == 0 ? 0 : ((max - min) >>> 6) + 1];
+            for (int x: sorted) {
+                int i = x - min;
+                bits[i >>> 6] |= 1L << i;
+            }
+        } else {
+            bits = null;
+        }
+        if (kind == RANGES) {
+            ranges = Snapshot.toRanges(sorted);
+        } else {
+            ranges = null;
+        }
     }
     
     public boolean contains(int x) {
-        return Arrays.binarySearch(array, x) >= 0;
+        if (x < min || x > max) return false;
+        switch (kind) {
+            case BITMAP: {
+                int i = x - min;
+                return (bits[i >>> 6] & (1L << i)) != 0;
+            }
+            case RANGES: {
+                // last range with start <= x
+                int lo = 0;
+                int hi = (ranges.length >> 1) - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (ranges[mid << 1] <= x) {
+                        lo = mid;
+                    } else {
+                        hi = mid - 1;
+                    }
+                }
+                return x < ranges[(lo << 1) + 1];
+            }
+            default: return Arrays.binarySearch(array, x) >= 0;
+        }
+    }
+    
+    // approximate retained size
+    long bytes() {
+        long n = 16 + 4L * array.length;
+        if (bits != null) n += 16 + 8L * bits.length;
+        if (ranges != null) n += 16 + 4L * ranges.length;
+        return n;
     }
     
     /*
@@ -0,0 +1,124 @@
+package io.github.adraffy.ens;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+// derived tables of ENSIP15, precomputed at build time (see SnapshotGenerator)
+// format: deflate(MAGIC, VERSION, hash, count, { length, deltas... } * count)
+// hash covers nf.bin and spec.bin, so a stale snapshot is ignored
+final class Snapshot {
+    
+    static final int MAGIC = 0x454E5331;
+    static final int VERSION = 5;
+    
+    static int hash(byte[]... resources) {
+        CRC32 crc = new CRC32();
+        for (byte[] v: resources) crc.update(v);
+        return (int)crc.getValue();
+    }
+    
+    // tables are inflated on demand
+    private final DataInputStream in;
+    private int remaining;
+    
+    private Snapshot(DataInputStream in, int count) {
+        this.in = in;
+        this.remaining = count;
+    }
+    
+    int[] next() {
+        if (remaining == 0) throw new IllegalStateException("snapshot exhausted");
+        try {
+            byte[] v = new byte[in.readInt() << 2];
+            in.readFully(v);
+            int[] t = new int[v.length >> 2];
+            ByteBuffer.wrap(v).asIntBuffer().get(t);
+            for (int i = 1; i < t.length; i++) {
+                t[i] += t[i - 1];
+            }
+            if (--remaining == 0) in.close();
+            return t;
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+    
+    // null if stale
+    static Snapshot read(byte[] v, int hash) {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(v)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != hash) {
+                in.close();
+                return null;
+            }
+            return new Snapshot(in, in.readInt());
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+    
+    // sorted unique -> [start, end) pairs
+    static int[] toRanges(int[] sorted) {
+        IntList v = new IntList();
+        for (int i = 0, n = sorted.length; i < n; ) {
+            int start = sorted[i++];
+            int end = start + 1;
+            while (i < n && sorted[i] == end) {
+                i++;
+                end++;
+            }
+            v.add(start);
+            v.add(end);
+        }
+        return v.toArray();
+    }
+    
+    static int[] widen(char[] v) {
+        int[] u = new int[v.length];
+        for (int i = 0; i < v.length; i++) u[i] = v[i];
+        return u;
+    }
+    
+    static char[] narrow(int[] v) {
+        char[] u = new char[v.length];
+        for (int i = 0; i < v.length; i++) u[i] = (char)v[i];
+        return u;
+    }
+    
+    // long -> hi, lo
+    static int[] split(long[] v) {
+        int[] u = new int[v.length << 1];
+        for (int i = 0; i < v.length; i++) {
+            u[i << 1] = (int)(v[i] >>> 32);
+            u[(i << 1) + 1] = (int)v[i];
+        }
+        return u;
+    }
+    
+    static long[] join(int[] v) {
+        long[] u = new long[v.length >> 1];
+        for (int i = 0; i < u.length; i++) {
+            u[i] = (long)v[i << 1] << 32 | (v[(i << 1) + 1] & 0xFFFFFFFFL);
+        }
+        return u;
+    }
+    
+    static int[] fromRanges(int[] ranges) {
+        int n = 0;
+        for (int i = 0; i < ranges.length; i += 2) n += ranges[i + 1] - ranges[i];
+        int[] v = new int[n];
+        n = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int cp = ranges[i], e = ranges[i + 1]; cp < e; cp++) {
+                v[n++] = cp;
+            }
+        }
+        return v;
+    }
+
+}
@@ -1,5 +1,6 @@
 package io.github.adraffy.ens;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +23,28 @@ public class StringUtils {
         return n; 
     }
     
+    static public int UTF8Width(int cp) {
+        return cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < UTF16_BMP ? 3 : 4;
+    }
+    
+    static void putUTF8(ByteBuffer out, int cp) {
+        if (cp < 0x80) {
+            out.put((byte)cp);
+        } else if (cp < 0x800) {
+            out.put((byte)(0xC0 | (cp >> 6)));
+            out.put((byte)(0x80 | (cp & 0x3F)));
+        } else if (cp < UTF16_BMP) {
+            out.put((byte)(0xE0 | (cp >> 12)));
+            out.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+            out.put((byte)(0x80 | (cp & 0x3F)));
+        } else {
+            out.put((byte)(0xF0 | (cp >> 18)));
+            out.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+            out.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+            out.put((byte)(0x80 | (cp & 0x3F)));
+        }
+    }
+    
     static public void appendCodepoint(StringBuilder sb, int cp) {
         if (cp < UTF16_BMP) {
             sb.append((char)cp);
@@ -65,8 +88,13 @@ public class StringUtils {
     }
     
     static public int[] explode(String s) { return explode(s, 0, s.length()); }
-    static public int[] explode(String s, int a, int b) {
+    static public int[] explode(String s, int a, int b) { return explode((CharSequence)s, a, b); }
+    static public int[] explode(CharSequence s, int a, int b) {
         IntList buf = new IntList(b - a);
+        explode(s, a, b, buf);
+        return buf.consume();
+    }
+    static void explode(CharSequence s, int a, int b, IntList buf) {
         while (a < b) {
             int ch0 = s.charAt(a++);
             int ch1;
@@ -78,9 +106,46 @@ public class StringUtils {
                 buf.add(ch0);
             }
         }
-        return buf.consume();
     }
    
+    // index of c in s[a, b) or -1
+    static int indexOf(CharSequence s, char c, int a, int b) {
+        if (s instanceof String) {
+            int i = ((String)s).indexOf(c, a);
+            return i < b ? i : -1;
+        }
+        for (; a < b; a++) {
+            if (s.charAt(a) == c) return a;
+        }
+        return -1;
+    }
+    
+    // latin1 view of a byte buffer, indexed like the buffer
+    static final class ByteChars implements CharSequence {
+        final ByteBuffer buf;
+        ByteChars(ByteBuffer buf) {
+            this.buf = buf;
+        }
+        @Override
+        public int length() {
+            return buf.limit();
+        }
+        @Override
+        public char charAt(int i) {
+            return (char)(buf.get(i) & 0xFF);
+        }
+        @Override
+        public CharSequence subSequence(int a, int b) {
+            return toString().substring(a, b);
+        }
+        @Override
+        public String toString() {
+            char[] v = new char[buf.limit()];
+            for (int i = 0; i < v.length; i++) v[i] = charAt(i);
+            return new String(v);
+        }
+    }
+    
     static public List<String> split(String s, char c) {
         ArrayList<String> ret = new ArrayList<>();
         int prev = 0;
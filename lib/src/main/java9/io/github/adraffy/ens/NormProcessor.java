@@ -0,0 +1,266 @@
+package io.github.adraffy.ens;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// reactive-streams stage: names in, NormResults out (never fails per name)
+// at most parallelism names are normalized at once on executor
+// at most capacity names are requested from upstream but not yet delivered downstream
+// ordered: results follow input order, otherwise completion order
+// upstream errors are forwarded immediately (pending results are dropped)
+// single subscriber, Java 9+ (packaged in META-INF/versions/9)
+public class NormProcessor implements Flow.Processor<String, NormResult> {
+    
+    public final ENSIP15 spec;
+    final Executor executor;
+    final int parallelism;
+    final int capacity;
+    final boolean ordered;
+    final ConcurrentLinkedQueue<NormalizerContext> contexts = new ConcurrentLinkedQueue<>(); // idle
+    final AtomicInteger wip = new AtomicInteger(); // drain() is serialized
+    
+    // guarded by this
+    Flow.Subscription upstream;
+    Flow.Subscriber<? super NormResult> downstream;
+    final ArrayDeque<Task> waiting = new ArrayDeque<>(); // received, not started
+    final NormResult[] ring; // ordered: seq % capacity
+    final ArrayDeque<NormResult> ready = new ArrayDeque<>(); // unordered
+    long received;
+    long emitted;
+    long requested; // from upstream, not yet received
+    long demand; // from downstream
+    int running;
+    boolean completed; // upstream
+    Throwable error;
+    boolean done; // terminated or cancelled
+    
+    public NormProcessor(ENSIP15 ens) {
+        this(ens, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(), true);
+    }
+    
+    public NormProcessor(ENSIP15 ens, Executor executor, int parallelism, boolean ordered) {
+        this(ens, executor, parallelism, parallelism << 2, ordered);
+    }
+    
+    public NormProcessor(ENSIP15 ens, Executor executor, int parallelism, int capacity, boolean ordered) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism");
+        if (capacity < parallelism) throw new IllegalArgumentException("capacity");
+        spec = ens;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.capacity = capacity;
+        this.ordered = ordered;
+        ring = ordered ? new NormResult[capacity] : null;
+    }
+    
+    final class Task implements Runnable {
+        final long seq;
+        final String name;
+        Task(long seq, String name) {
+            this.seq = seq;
+            this.name = name;
+        }
+        @Override
+        public void run() {
+            NormalizerContext ctx = contexts.poll();
+            if (ctx == null) ctx = new NormalizerContext();
+            NormResult result = spec.tryNormalize(name, ctx);
+            contexts.offer(ctx);
+            synchronized (NormProcessor.this) {
+                running--;
+                if (ordered) {
+                    ring[(int)(seq % capacity)] = result;
+                } else {
+                    ready.add(result);
+                }
+            }
+            drain();
+        }
+    }
+    
+    final class Downstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            synchronized (NormProcessor.this) {
+                if (done) return;
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive request: " + n); // §3.9
+                } else {
+                    demand += n;
+                    if (demand < 0) demand = Long.MAX_VALUE; // unbounded
+                }
+            }
+            drain();
+        }
+        @Override
+        public void cancel() {
+            Flow.Subscription up;
+            synchronized (NormProcessor.this) {
+                if (done) return;
+                done = true;
+                up = upstream;
+                clear();
+            }
+            if (up != null) up.cancel();
+        }
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super NormResult> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        boolean accepted;
+        synchronized (this) {
+            accepted = downstream == null;
+            if (accepted) downstream = subscriber;
+        }
+        if (!accepted) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) {}
+                @Override public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Downstream());
+        drain();
+    }
+    
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        boolean accepted;
+        synchronized (this) {
+            accepted = upstream == null && !done;
+            if (accepted) upstream = subscription;
+        }
+        if (!accepted) {
+            subscription.cancel(); // §2.5
+            return;
+        }
+        drain();
+    }
+    
+    @Override
+    public void onNext(String name) {
+        if (name == null) throw new NullPointerException(); // §2.13
+        synchronized (this) {
+            if (done) return;
+            if (received - emitted >= capacity) {
+                error = new IllegalStateException("more names than requested");
+            } else {
+                waiting.add(new Task(received++, name));
+                if (requested > 0) requested--;
+            }
+        }
+        drain();
+    }
+    
+    @Override
+    public void onError(Throwable err) {
+        if (err == null) throw new NullPointerException();
+        synchronized (this) {
+            if (done) return;
+            error = err;
+            upstream = null; // terminated
+        }
+        drain();
+    }
+    
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            if (done) return;
+            completed = true;
+        }
+        drain();
+    }
+    
+    // next deliverable result, or null
+    NormResult poll() {
+        if (!ordered) return ready.poll();
+        int i = (int)(emitted % capacity);
+        NormResult result = ring[i];
+        if (result != null) ring[i] = null;
+        return result;
+    }
+    
+    void clear() {
+        waiting.clear();
+        ready.clear();
+        if (ring != null) Arrays.fill(ring, null);
+    }
+    
+    // the only place that signals downstream, requests upstream, and starts tasks
+    void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        ArrayList<Task> start = new ArrayList<>();
+        for (int missed = 1; ; ) {
+            while (true) {
+                Flow.Subscriber<? super NormResult> s;
+                Flow.Subscription up;
+                NormResult next = null;
+                Throwable err = null;
+                boolean complete = false;
+                long more = 0;
+                synchronized (this) {
+                    s = downstream;
+                    up = upstream;
+                    if (done || s == null) break;
+                    if (error != null) {
+                        err = error;
+                        done = true;
+                        clear();
+                    } else if (demand > 0 && (next = poll()) != null) {
+                        demand--;
+                        emitted++;
+                    } else if (completed && emitted == received) {
+                        complete = true;
+                        done = true;
+                    } else {
+                        while (running < parallelism && !waiting.isEmpty()) {
+                            start.add(waiting.poll());
+                            running++;
+                        }
+                        if (up != null && !completed) {
+                            long want = capacity - (received - emitted) - requested;
+                            if (want > 0 && (requested == 0 || want >= capacity >> 1)) { // batch
+                                more = want;
+                                requested += want;
+                            }
+                        }
+                        if (start.isEmpty() && more == 0) break;
+                    }
+                }
+                if (err != null) {
+                    if (up != null) up.cancel(); // null if the error came from upstream
+                    s.onError(err);
+                } else if (next != null) {
+                    s.onNext(next);
+                } else if (complete) {
+                    s.onComplete();
+                } else {
+                    for (Task task: start) {
+                        try {
+                            executor.execute(task);
+                        } catch (RuntimeException ex) {
+                            synchronized (this) {
+                                running--;
+                                if (error == null) error = ex;
+                            }
+                        }
+                    }
+                    start.clear();
+                    if (more > 0) up.request(more);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) break;
+        }
+    }
+
+}
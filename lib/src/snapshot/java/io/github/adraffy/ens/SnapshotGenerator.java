@@ -0,0 +1,47 @@
+package io.github.adraffy.ens;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+
+// writes snapshot.bin (see Snapshot)
+// build-time only: ./gradlew :lib:snapshot
+final class SnapshotGenerator {
+    
+    static byte[] write(int hash, int[][] tables) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(Snapshot.MAGIC);
+            out.writeInt(Snapshot.VERSION);
+            out.writeInt(hash);
+            out.writeInt(tables.length);
+            for (int[] t: tables) {
+                out.writeInt(t.length);
+                for (int i = 0, prev = 0; i < t.length; i++) {
+                    out.writeInt(t[i] - prev);
+                    prev = t[i];
+                }
+            }
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+        return bytes.toByteArray();
+    }
+    
+    // usage: SnapshotGenerator <output file>
+    // run after updating nf.bin or spec.bin
+    public static void main(String[] args) throws IOException {
+        byte[] nf = ENSNormalize.readResource("/nf.bin");
+        byte[] spec = ENSNormalize.readResource("/spec.bin");
+        ENSIP15 ens = new ENSIP15(new NF(ENSNormalize.decoder(nf)), ENSNormalize.decoder(spec), null);
+        byte[] v = write(Snapshot.hash(nf, spec), ens.snapshotTables());
+        try (FileOutputStream out = new FileOutputStream(args[0])) {
+            out.write(v);
+        }
+        System.out.println(String.format("Wrote %d bytes: %s", v.length, args[0]));
+    }
+
+}
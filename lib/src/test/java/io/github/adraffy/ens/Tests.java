@@ -1,16 +1,26 @@
 package io.github.adraffy.ens;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 
 class Tests {
     
@@ -71,6 +81,554 @@ class Tests {
         Assertions.assertEquals(true, ENSNormalize.ENSIP15.normalizeDetails("💩ì.a").possiblyConfusing);
     }
     
+    @Test void asciiFastPath() {
+        String name = "vitalik.eth";
+        Assertions.assertSame(name, ENSNormalize.ENSIP15.normalize(name));
+        Assertions.assertSame(name, ENSNormalize.ENSIP15.beautify(name));
+        Assertions.assertEquals("", ENSNormalize.ENSIP15.normalize(""));
+        Assertions.assertEquals("__a-b.$9", ENSNormalize.ENSIP15.normalize("__A-b.$9"));
+        Assertions.assertEquals("ab\u2019c", ENSNormalize.ENSIP15.normalize("AB'c")); // non-ascii mapping
+        for (String s: new String[]{ "a_", "ab--c", "a..b", ".a", "a.", "a b", "A!" }) {
+            Assertions.assertThrows(InvalidLabelException.class, () -> ENSNormalize.ENSIP15.normalize(s));
+            Assertions.assertNull(ENSNormalize.ENSIP15.normalizeASCII(s));
+        }
+    }
+    
+    @Test void normalizeAll() {
+        String[] names = { "RaFFY.eth", "a_b", "\u03BF\u043E", "\u0000", "" };
+        NormResult[] results = ENSNormalize.ENSIP15.normalizeAll(names);
+        Assertions.assertEquals("raffy.eth", results[0].name);
+        Assertions.assertEquals(ENSIP15.INVALID_UNDERSCORE, results[1].error.kind);
+        Assertions.assertEquals(ENSIP15.ILLEGAL_MIXTURE, results[2].error.kind);
+        Assertions.assertEquals(0x43E, results[2].error.cp);
+        Assertions.assertEquals(ENSIP15.DISALLOWED_CHARACTER, results[3].error.kind);
+        Assertions.assertEquals(0, results[3].error.cp);
+        Assertions.assertEquals(true, results[4].isValid());
+        // parallel matches sequential
+        String[] many = new String[10000];
+        for (int i = 0; i < many.length; i++) many[i] = names[i % names.length] + i;
+        NormResult[] v = ENSNormalize.ENSIP15.normalizeAll(many, Runnable::run);
+        NormResult[] u = ENSNormalize.ENSIP15.normalizeAll(many);
+        for (int i = 0; i < many.length; i++) {
+            Assertions.assertEquals(v[i].toString(), u[i].toString());
+        }
+    }
+    
+    @Test void tryNormalize() {
+        NormResult ok = ENSNormalize.ENSIP15.tryNormalize("RaFFY🚴‍♂️.eTh");
+        Assertions.assertEquals("raffy\uD83D\uDEB4\u200D\u2642.eth", ok.name);
+        Assertions.assertNull(ok.error);
+        Assertions.assertNull(ENSNormalize.ENSIP15.validate("raffy.eth"));
+        NormError err = ENSNormalize.ENSIP15.validate("a.b c.d");
+        Assertions.assertEquals(ENSIP15.DISALLOWED_CHARACTER, err.kind);
+        Assertions.assertEquals(2, err.start);
+        Assertions.assertEquals(5, err.end);
+        Assertions.assertEquals(0x20, err.cp);
+        // matches the throwing api
+        for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
+            String name = ((JSONObject)test).getString("name");
+            NormResult result = ENSNormalize.ENSIP15.tryNormalize(name);
+            Assertions.assertEquals(result.error == null, ENSNormalize.ENSIP15.validate(name) == null);
+            try {
+                Assertions.assertEquals(ENSNormalize.ENSIP15.normalize(name), result.name);
+            } catch (InvalidLabelException e) {
+                Assertions.assertEquals(e.getError().kind, result.error.kind);
+                Assertions.assertEquals(e.pos, result.error.start);
+                Assertions.assertEquals(e.end, result.error.end);
+                Assertions.assertEquals(e.getMessage(), result.error.toException().getMessage());
+            }
+        }
+    }
+    
+    @Test void appendable() {
+        StringBuilder sb = new StringBuilder("[");
+        Assertions.assertNull(ENSNormalize.ENSIP15.normalize(CharBuffer.wrap("RaFFY.eTh".toCharArray()), sb));
+        Assertions.assertEquals("[raffy.eth", sb.toString());
+        for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
+            String name = ((JSONObject)test).getString("name");
+            NormResult result = ENSNormalize.ENSIP15.tryNormalize(name);
+            // offsets are relative to the input
+            sb.setLength(1);
+            NormError err = ENSNormalize.ENSIP15.normalize("<<" + name + ">>", 2, 2 + name.length(), sb);
+            if (result.error == null) {
+                Assertions.assertNull(err);
+                Assertions.assertEquals("[" + result.name, sb.toString());
+                StringWriter out = new StringWriter();
+                Assertions.assertNull(ENSNormalize.ENSIP15.beautify(name, out));
+                Assertions.assertEquals(ENSNormalize.ENSIP15.beautify(name), out.toString());
+            } else {
+                Assertions.assertEquals(result.error.kind, err.kind);
+                Assertions.assertEquals(result.error.start + 2, err.start);
+                Assertions.assertEquals(result.error.end + 2, err.end);
+                Assertions.assertEquals("[", sb.toString()); // unchanged
+            }
+        }
+    }
+    
+    @Test void contextAllocation() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)bean;
+        Assumptions.assumeTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+        NormalizerContext ctx = new NormalizerContext();
+        for (String name: new String[]{ "Raffy.eth", "ξένος.привет", "💩💩💩.eth", "Ⓐb👨‍❤️‍💋‍👨.café" }) {
+            String norm = ENSNormalize.ENSIP15.normalize(name, ctx);
+            final int N = 10000;
+            for (int i = 0; i < N; i++) ENSNormalize.ENSIP15.normalize(name, ctx); // warmup
+            long before = mx.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < N; i++) ENSNormalize.ENSIP15.normalize(name, ctx);
+            long perCall = (mx.getThreadAllocatedBytes(thread) - before) / N;
+            // only the output string: header + backing array (+ a compaction attempt for non-latin1)
+            Assertions.assertTrue(perCall <= 64 + 4 * norm.length(), name + ": " + perCall + " bytes/call");
+            before = mx.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < N; i++) ENSNormalize.ENSIP15.validate(name, ctx);
+            Assertions.assertTrue(mx.getThreadAllocatedBytes(thread) - before < N, name + ": validate allocates"); // ~0 per call
+        }
+    }
+    
+    @Test void utf8() {
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
+            String name = ((JSONObject)test).getString("name");
+            if (!StandardCharsets.UTF_8.newEncoder().canEncode(name)) continue;
+            byte[] v = ("<<" + name + ">>").getBytes(StandardCharsets.UTF_8);
+            int end = v.length - 2;
+            NormResult result = ENSNormalize.ENSIP15.tryNormalize(name);
+            out.clear();
+            NormError err = ENSNormalize.ENSIP15.normalize(v, 2, end, out);
+            if (result.error == null) {
+                Assertions.assertNull(err);
+                Assertions.assertEquals(result.name, new String(out.array(), 0, out.position(), StandardCharsets.UTF_8));
+                Assertions.assertEquals(result.name.equals(name), ENSNormalize.ENSIP15.isNormalized(v, 2, end));
+            } else {
+                Assertions.assertEquals(result.error.kind, err.kind);
+                Assertions.assertEquals(2 + name.substring(0, result.error.start).getBytes(StandardCharsets.UTF_8).length, err.start);
+                Assertions.assertEquals(0, out.position()); // unchanged
+                Assertions.assertFalse(ENSNormalize.ENSIP15.isNormalized(v, 2, end));
+            }
+        }
+        // malformed
+        int[][] bad = {
+            { 0x61, 0xC3, 0x28 }, // bad continuation
+            { 0xC0, 0xAF }, // overlong
+            { 0xE0, 0x80, 0xAF }, // overlong
+            { 0xED, 0xA0, 0x80 }, // surrogate
+            { 0xF4, 0x90, 0x80, 0x80 }, // above 10FFFF
+            { 0xE2, 0x82 }, // truncated
+            { 0x80 }, // unexpected continuation
+        };
+        for (int[] cps: bad) {
+            byte[] v = new byte[cps.length + 4];
+            v[0] = 'a';
+            v[1] = '.';
+            for (int i = 0; i < cps.length; i++) v[i + 2] = (byte)cps[i];
+            v[v.length - 2] = '.';
+            v[v.length - 1] = 'b';
+            out.clear();
+            NormError err = ENSNormalize.ENSIP15.normalize(ByteBuffer.wrap(v), out);
+            Assertions.assertEquals(ENSIP15.INVALID_UTF8, err.kind);
+            Assertions.assertEquals(2, err.start);
+            Assertions.assertEquals(v.length - 2, err.end);
+            Assertions.assertEquals(0, out.position());
+            Assertions.assertFalse(ENSNormalize.ENSIP15.isNormalized(v, 0, v.length));
+        }
+        Assertions.assertEquals("invalid utf8: C3", ENSNormalize.ENSIP15.normalize(new byte[]{ 'a', (byte)0xC3, '(' }, 0, 3, out).toNormException().getMessage());
+        // overflow
+        ByteBuffer small = ByteBuffer.allocate(4);
+        Assertions.assertThrows(BufferOverflowException.class, () -> ENSNormalize.ENSIP15.normalize(ByteBuffer.wrap("raffy.eth".getBytes(StandardCharsets.UTF_8)), small));
+        Assertions.assertEquals(0, small.position());
+        Assertions.assertTrue(ENSNormalize.ENSIP15.isNormalized(ByteBuffer.wrap("raffy.eth".getBytes(StandardCharsets.UTF_8))));
+    }
+    
+    @Test void incremental() {
+        IncrementalNormalizer inc = new IncrementalNormalizer(ENSNormalize.ENSIP15);
+        inc.set("abcdefghijklmnopqrstuvwxyze");
+        Assertions.assertTrue(inc.checkpoints.count > 0);
+        inc.append("\u0301"); // composes across the keystroke
+        Assertions.assertEquals("abcdefghijklmnopqrstuvwxyz\u00E9", inc.normalized());
+        inc.set("abcdefghijklmnopqrstuvwxyz1\uFE0F");
+        inc.append("\u20E3"); // text becomes emoji
+        Assertions.assertEquals("abcdefghijklmnopqrstuvwxyz1\u20E3", inc.normalized());
+        inc.set("\uD83D\uDC68\u200D\uD83D\uDCBB.eth"); // man technologist
+        inc.backspace(); inc.backspace(); inc.backspace(); inc.backspace();
+        inc.backspace(); // into the zwj sequence
+        Assertions.assertEquals("\uD83D\uDC68\u200D", inc.input());
+        Assertions.assertFalse(inc.isValid());
+        for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
+            String name = ((JSONObject)test).getString("name");
+            // type it, then erase it
+            boolean each = name.length() <= 256; // every prefix
+            inc.clear();
+            for (int i = 0; i < name.length(); i++) {
+                inc.append(name.charAt(i));
+                if (each) assertIncremental(inc, name.substring(0, i + 1), false);
+            }
+            assertIncremental(inc, name, true);
+            while (inc.input().length() > 0) {
+                inc.backspace();
+                if (each) assertIncremental(inc, inc.input(), false);
+            }
+            // edit in the middle
+            inc.set(name);
+            inc.set("a" + name);
+            assertIncremental(inc, "a" + name, false);
+        }
+    }
+    
+    static void assertIncremental(IncrementalNormalizer inc, String name, boolean details) {
+        NormResult result = ENSNormalize.ENSIP15.tryNormalize(name);
+        NormError err = inc.error();
+        if (result.error == null) {
+            Assertions.assertNull(err, name);
+            Assertions.assertEquals(result.name, inc.normalized());
+            Assertions.assertEquals(ENSNormalize.ENSIP15.beautify(name), inc.beautified());
+            if (details && !name.isEmpty()) {
+                NormDetails expect = ENSNormalize.ENSIP15.normalizeDetails(name);
+                Assertions.assertEquals(expect.groups, inc.details().groups);
+                Assertions.assertEquals(expect.emojis, inc.details().emojis);
+                Assertions.assertEquals(expect.possiblyConfusing, inc.details().possiblyConfusing);
+            }
+        } else {
+            Assertions.assertNotNull(err, name);
+            Assertions.assertEquals(result.error.kind, err.kind);
+            Assertions.assertEquals(result.error.start, err.start);
+            Assertions.assertEquals(result.error.end, err.end);
+            Assertions.assertEquals(result.error.cp, err.cp);
+            Assertions.assertNull(inc.normalized());
+        }
+    }
+    
+    @Test void namehash() {
+        // keccak256
+        Assertions.assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470", toHex(Keccak256.hash(new byte[0])));
+        Assertions.assertEquals("4e03657aea45a94fc7d47ba826c8d667c0d1e6e33a64a036ec44f58fa12d6c45", toHex(Keccak256.hash("abc".getBytes(StandardCharsets.UTF_8))));
+        byte[] multi = new byte[200]; // > rate
+        Arrays.fill(multi, (byte)'x');
+        Assertions.assertEquals("3c3800defb6a25a70a2737e0716eeb5d270559ad3cad8f6abddac58802d7158e", toHex(Keccak256.hash(multi)));
+        // ens
+        String[][] vectors = {
+            { "", "0000000000000000000000000000000000000000000000000000000000000000" },
+            { "eth", "93cdeb708b7545dc668eb9280176169d1c33cfd8ed6f04690a0bcc88a93fc4ae" },
+            { "foo.eth", "de9b09fd7c5f901e23a3f19fecc54828e9c848539801e86591bd9801b019f84f" },
+            { "alice.eth", "787192fc5378cc32aa956ddfdedbf26b24e8d78e40109add0eea2c1a012c3dec" },
+            { "vitalik.eth", "ee6c4522aab0003e8d14cd40a6af439055fd2577951148c14b6cea9a53475835" },
+            { "VITALIK.Eth", "ee6c4522aab0003e8d14cd40a6af439055fd2577951148c14b6cea9a53475835" },
+            { "nick.eth", "05a67c0ee82964c4f7394cdd47fee7f4d9503a23c09c38341779ea012afe6e00" },
+            { "💩.eth", "3aef7cc933c5fb65036d4ddd389fdf5c65b1fc79e9c1f34655c86e373d974d76" },
+        };
+        for (String[] v: vectors) {
+            Assertions.assertEquals(v[1], toHex(ENSNormalize.ENSIP15.namehash(v[0])), v[0]);
+        }
+        byte[][] labels = ENSNormalize.ENSIP15.labelhashes("Foo.ETH");
+        Assertions.assertEquals(2, labels.length);
+        Assertions.assertEquals("4f5b812789fc606be1b3b16908db13fc7a9adf7ca72641f84d75b47069d3d7f0", toHex(labels[1]));
+        Assertions.assertThrows(InvalidLabelException.class, () -> ENSNormalize.ENSIP15.namehash("a_b.eth"));
+        // fused matches normalize then hash
+        for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
+            String name = ((JSONObject)test).getString("name");
+            NormResult result = ENSNormalize.ENSIP15.tryNormalize(name);
+            if (result.error != null) continue;
+            byte[][] hashes = ENSNormalize.ENSIP15.labelhashes(name);
+            List<String> split = result.name.isEmpty() ? new ArrayList<>() : StringUtils.split(result.name, '.');
+            Assertions.assertEquals(split.size(), hashes.length);
+            for (int i = 0; i < hashes.length; i++) {
+                Assertions.assertArrayEquals(Keccak256.hash(split.get(i).getBytes(StandardCharsets.UTF_8)), hashes[i]);
+            }
+        }
+    }
+    
+    @Test void lazyExceptions() {
+        InvalidLabelException e = Assertions.assertThrows(InvalidLabelException.class, () -> ENSNormalize.ENSIP15.normalize("a.\u03BF\u043E"));
+        Assertions.assertEquals(NormException.STACK_TRACES, e.getStackTrace().length > 0); // on unless disabled
+        Assertions.assertEquals(2, e.pos);
+        Assertions.assertEquals(4, e.end);
+        IllegalMixtureException x = (IllegalMixtureException)e.getError();
+        Assertions.assertSame(NormException.UNFORMATTED, x.reason); // nothing formatted yet
+        Assertions.assertNull(x.message);
+        Assertions.assertEquals(ENSIP15.ILLEGAL_MIXTURE, x.kind);
+        Assertions.assertEquals(0x43E, x.cp);
+        Assertions.assertEquals("Greek", x.group.name);
+        Assertions.assertEquals("Cyrillic", x.other.name);
+        Assertions.assertEquals("Greek + Cyrillic \"\u043E\u200E\" {43E}", x.getReason());
+        Assertions.assertEquals("Invalid label \"\u03BF\u043E\u200E\": illegal mixture: " + x.getReason(), e.getMessage());
+    }
+    
+    @Test void normCache() {
+        NormCache cache = NormCache.ofEntries(ENSNormalize.ENSIP15, 1000);
+        Assertions.assertEquals("raffy.eth", cache.normalize("RaFFY.eth"));
+        Assertions.assertEquals("raffy.eth", cache.normalize("RaFFY.eth"));
+        Assertions.assertThrows(InvalidLabelException.class, () -> cache.normalize("a_b"));
+        InvalidLabelException e = Assertions.assertThrows(InvalidLabelException.class, () -> cache.normalize("a_b"));
+        Assertions.assertEquals(ENSIP15.INVALID_UNDERSCORE, e.getError().kind);
+        Assertions.assertEquals(ENSIP15.INVALID_UNDERSCORE, cache.tryNormalize("a_b").error.kind);
+        Assertions.assertEquals("1\uFE0F\u20E3.eth", cache.beautify("1\u20E3.eth"));
+        Assertions.assertEquals("ASCII+Emoji", cache.normalizeDetails("\uD83D\uDCA9a").groupDescription());
+        Assertions.assertEquals(3, cache.hits());
+        Assertions.assertEquals(4, cache.misses());
+        Assertions.assertEquals(4, cache.size());
+        // invalid misses are cached without throwing
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertEquals(ENSIP15.INVALID_UNDERSCORE, Assertions.assertThrows(InvalidLabelException.class, () -> cache.beautify("a_b")).getError().kind);
+            Assertions.assertEquals(ENSIP15.INVALID_UNDERSCORE, Assertions.assertThrows(InvalidLabelException.class, () -> cache.normalizeDetails("a_b")).getError().kind);
+        }
+        Assertions.assertEquals(6, cache.size());
+        // bounded across every operation
+        NormCache bytes = NormCache.ofBytes(ENSNormalize.ENSIP15, 1 << 16);
+        for (int i = 0; i < 10000; i++) {
+            for (NormCache c: new NormCache[]{cache, bytes}) {
+                c.normalize("name" + i);
+                c.beautify("name" + i);
+                c.normalizeDetails("name" + i);
+            }
+        }
+        Assertions.assertTrue(cache.size() <= 1000);
+        Assertions.assertTrue(cache.weight() <= 1000);
+        Assertions.assertTrue(cache.evictions() > 0);
+        Assertions.assertTrue(bytes.weight() <= 1 << 16);
+        // updates bypass admission
+        BoundedCache<String,String> bounded = new BoundedCache<>(4, 2, (k, v) -> v.length());
+        bounded.put("a", "xx");
+        bounded.put("b", "xx");
+        for (int i = 0; i < 5; i++) bounded.get("b"); // hotter than a
+        bounded.put("a", "xxx");
+        Assertions.assertEquals("xxx", bounded.get("a"));
+        Assertions.assertEquals(3, bounded.weight());
+        // admission is all-or-nothing
+        bounded = new BoundedCache<>(10, 2, (k, v) -> v.length());
+        bounded.put("a", "xxxxx");
+        bounded.put("b", "xxxxx");
+        for (int i = 0; i < 5; i++) bounded.get("b");
+        bounded.put("c", "xxxxxxxxxx"); // colder than b
+        Assertions.assertEquals(2, bounded.size());
+        Assertions.assertNotNull(bounded.get("a"));
+        Assertions.assertNull(bounded.get("c"));
+        for (int i = 0; i < 10; i++) bounded.get("c");
+        bounded.put("c", "xxxxxxxxxx"); // hotter than both
+        Assertions.assertEquals(1, bounded.size());
+        Assertions.assertEquals(2, bounded.evictions.sum());
+    }
+    
+    @Test void labelCache() {
+        LabelCache cache = LabelCache.ofEntries(1000);
+        NormalizerContext ctx = new NormalizerContext(cache);
+        Assertions.assertEquals("ξ.eth", ENSNormalize.ENSIP15.normalize("Ξ.eth", ctx));
+        Assertions.assertEquals("💩.eth", ENSNormalize.ENSIP15.normalize("💩.eth", ctx)); // eth hits
+        Assertions.assertEquals(1, cache.hits());
+        Assertions.assertEquals(3, cache.misses());
+        // errors are relocated
+        Assertions.assertEquals(2, ENSNormalize.ENSIP15.validate("ξ.a_b", ctx).start);
+        Assertions.assertEquals(0, ENSNormalize.ENSIP15.validate("a_b.ξ", ctx).start);
+        Assertions.assertEquals(2, cache.hits());
+        // same results as without
+        cache = LabelCache.ofEntries(1 << 17);
+        ctx = new NormalizerContext(cache);
+        for (int pass = 0; pass < 2; pass++) {
+            for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
+                String name = ((JSONObject)test).getString("name");
+                NormResult expect = ENSNormalize.ENSIP15.tryNormalize(name);
+                NormResult result = ENSNormalize.ENSIP15.tryNormalize(name, ctx);
+                Assertions.assertEquals(expect.name, result.name);
+                if (expect.error != null) {
+                    Assertions.assertEquals(expect.error.kind, result.error.kind);
+                    Assertions.assertEquals(expect.error.start, result.error.start);
+                    Assertions.assertEquals(expect.error.end, result.error.end);
+                    Assertions.assertEquals(expect.error.cp, result.error.cp);
+                } else {
+                    Assertions.assertEquals(ENSNormalize.ENSIP15.beautify(name), ENSNormalize.ENSIP15.beautify(name, ctx));
+                }
+            }
+        }
+        Assertions.assertTrue(cache.hitRate() > 0.4); // second pass
+        // bounded across both operations
+        LabelCache entries = LabelCache.ofEntries(1000);
+        LabelCache bytes = LabelCache.ofBytes(1 << 16);
+        for (LabelCache c: new LabelCache[]{entries, bytes}) {
+            NormalizerContext cached = new NormalizerContext(c);
+            for (int i = 0; i < 10000; i++) {
+                ENSNormalize.ENSIP15.normalize("\u03BE" + i, cached);
+                ENSNormalize.ENSIP15.beautify("\u03BE" + i, cached);
+            }
+            Assertions.assertTrue(c.evictions() > 0);
+        }
+        Assertions.assertTrue(entries.size() <= 1000);
+        Assertions.assertTrue(bytes.weight() <= 1 << 16);
+    }
+    
+    @Test void metrics() {
+        ENSIP15 ens = ENSNormalize.ENSIP15;
+        NormStats stats = new NormStats(1); // time every label
+        ens.setMetrics(stats);
+        try {
+            Assertions.assertEquals("raffy.eth", ens.normalize("Raffy.eth"));
+            Assertions.assertEquals("💩💩.eth", ens.normalize("💩💩.eth"));
+            Assertions.assertEquals("ξ.eth", ens.normalize("Ξ.eth"));
+            Assertions.assertNotNull(ens.tryNormalize("a_b.eth").error); // stops at a_b
+        } finally {
+            ens.setMetrics(null);
+        }
+        Assertions.assertEquals(7, stats.labels());
+        Assertions.assertEquals(1, stats.invalid());
+        Assertions.assertEquals(1, (long)stats.errors().get(ENSIP15.INVALID_UNDERSCORE));
+        Assertions.assertEquals(4, (long)stats.groups().get(ens.ASCII));
+        Assertions.assertEquals(1, (long)stats.groups().get(ens.EMOJI));
+        Assertions.assertEquals(1, (long)stats.groups().get(ens.LATIN));
+        Assertions.assertEquals(1, stats.emojis().size());
+        Assertions.assertEquals(2, (long)stats.emojis().values().iterator().next());
+        Assertions.assertEquals(1, stats.samples(NormStage.ASCII)); // Raffy.eth
+        Assertions.assertEquals(5, stats.samples(NormStage.EXPLODE));
+        Assertions.assertEquals(1, stats.samples(NormStage.CHECK_WHOLE)); // only ξ (Latin)
+        stats.reset();
+        ens.normalize("Raffy.eth"); // disabled
+        Assertions.assertEquals(0, stats.labels());
+    }
+    
+    @Test void bulk() throws IOException {
+        List<String> names = new ArrayList<>();
+        for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
+            String name = ((JSONObject)test).getString("name");
+            if (name.indexOf('\n') < 0 && name.indexOf('\r') < 0) names.add(name);
+        }
+        Path input = Files.createTempFile("bulk", ".txt");
+        try {
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            file.write(String.join("\n", names).getBytes(StandardCharsets.UTF_8));
+            file.write(new byte[]{'\n', 'a', 'b', '.', 'c', (byte)0xFF, 'd'}); // invalid utf8 in the 2nd label
+            file.write(new byte[]{'\n', (byte)0xF0, (byte)0x9F, (byte)0x92, (byte)0xA9, '.', (byte)0xED, (byte)0xA0, (byte)0x80}); // surrogate after a 2-unit emoji
+            Files.write(input, file.toByteArray());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BulkNormalizer.Summary summary = new BulkNormalizer(ENSNormalize.ENSIP15, true, 3, 1 << 10).run(input, Channels.newChannel(bytes)); // many small chunks
+            Assertions.assertEquals(names.size() + 2, summary.names);
+            String[] rows = asUTF8(bytes.toByteArray()).split("\n");
+            Assertions.assertEquals(names.size() + 2, rows.length);
+            for (int i = 0; i < 2; i++) {
+                JSONObject row = new JSONObject(rows[names.size() + i]);
+                Assertions.assertEquals("invalid utf8", row.getString("error"));
+                Assertions.assertEquals(3, row.getInt("position")); // utf-16 offset of the label
+            }
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                JSONObject row = new JSONObject(rows[i]);
+                Assertions.assertEquals(name, row.getString("input"));
+                NormResult result = ENSNormalize.ENSIP15.tryNormalize(name);
+                if (result.error != null) {
+                    Assertions.assertEquals(result.error.kind, row.getString("error"));
+                    Assertions.assertEquals(result.error.start, row.getInt("position"));
+                } else {
+                    Assertions.assertEquals(result.name, row.getString("normalized"));
+                    Assertions.assertEquals(ENSNormalize.ENSIP15.beautify(name), row.getString("beautified"));
+                    Assertions.assertEquals(ENSNormalize.ENSIP15.normalizeDetails(name).groupDescription(), row.getString("group"));
+                }
+            }
+        } finally {
+            Files.delete(input);
+        }
+    }
+    
+    @Test void snapshot() {
+        ENSIP15 loaded = ENSNormalize.ENSIP15;
+        Assertions.assertTrue(loaded.fromSnapshot, "stale snapshot.bin: ./gradlew :lib:snapshot");
+        ENSIP15 computed = new ENSIP15(ENSNormalize.NF, ENSNormalize.decoder("/spec.bin"), null);
+        Assertions.assertArrayEquals(computed.possiblyValid.array, loaded.possiblyValid.array);
+        Assertions.assertEquals(computed.wholes.size(), loaded.wholes.size());
+        Assertions.assertArrayEquals(computed.derived().confusables.index, loaded.derived().confusables.index);
+        Assertions.assertArrayEquals(computed.derived().confusables.data, loaded.derived().confusables.data);
+        Assertions.assertArrayEquals(computed.derived().props.index, loaded.derived().props.index);
+        Assertions.assertArrayEquals(computed.derived().props.data, loaded.derived().props.data);
+        Assertions.assertArrayEquals(computed.derived().mappings, loaded.derived().mappings);
+        Assertions.assertArrayEquals(computed.derived().groupBits.index, loaded.derived().groupBits.index);
+        Assertions.assertArrayEquals(computed.derived().groupBits.data, loaded.derived().groupBits.data);
+        Assertions.assertArrayEquals(computed.derived().groupPatterns, loaded.derived().groupPatterns);
+        Assertions.assertArrayEquals(computed.derived().emojiAutomaton.starts, loaded.derived().emojiAutomaton.starts);
+        Assertions.assertArrayEquals(computed.derived().emojiAutomaton.edges, loaded.derived().emojiAutomaton.edges);
+        Assertions.assertArrayEquals(computed.derived().emojiAutomaton.edgeCps, loaded.derived().emojiAutomaton.edgeCps);
+        Assertions.assertArrayEquals(computed.derived().emojiAutomaton.edgeStates, loaded.derived().emojiAutomaton.edgeStates);
+        for (int i = 0; i < computed.derived().emojiAutomaton.accept.length; i++) {
+            EmojiSequence a = computed.derived().emojiAutomaton.accept[i];
+            EmojiSequence b = loaded.derived().emojiAutomaton.accept[i];
+            Assertions.assertEquals(a == null ? -1 : computed.emojis.indexOf(a), b == null ? -1 : loaded.emojis.indexOf(b));
+        }
+    }
+    
+    @Test void codepointProps() {
+        ENSIP15 ens = ENSNormalize.ENSIP15;
+        ENSIP15.Derived d = ens.derived();
+        for (int cp = 0; cp < 0x110000; cp++) {
+            int props = d.props.get(cp);
+            Assertions.assertEquals(ens.possiblyValid.contains(cp), (props & ENSIP15.P_VALID) != 0);
+            Assertions.assertEquals(ens.ignored.contains(cp), (props & ENSIP15.P_IGNORED) != 0);
+            Assertions.assertEquals(ens.combiningMarks.contains(cp), (props & ENSIP15.P_CM) != 0);
+            Assertions.assertEquals(ens.nonSpacingMarks.contains(cp), (props & ENSIP15.P_NSM) != 0);
+            Assertions.assertEquals(ens.fenced.containsKey(cp), (props & ENSIP15.P_FENCED) != 0);
+            Assertions.assertEquals(ens.shouldEscape.contains(cp), (props & ENSIP15.P_ESCAPE) != 0);
+            ReadOnlyIntList replace = ens.mapped.get(cp);
+            boolean check = replace != null ? replace.stream().anyMatch(ens.NFCCheck::contains) : ens.NFCCheck.contains(cp);
+            Assertions.assertEquals(check, (props & ENSIP15.P_NFC_CHECK) != 0);
+            Assertions.assertEquals(replace != null, (props & ENSIP15.P_MAPPED) != 0);
+            if (replace != null) {
+                int off = props >>> ENSIP15.P_MAPPING_SHIFT;
+                Assertions.assertArrayEquals(replace.array, Arrays.copyOfRange(d.mappings, off + 1, off + 1 + d.mappings[off]));
+            }
+        }
+    }
+    
+    @Test void groupBits() {
+        ENSIP15 ens = ENSNormalize.ENSIP15;
+        ENSIP15.Derived d = ens.derived();
+        for (int cp = 0; cp < 0x110000; cp++) {
+            int bits = d.groupBits.get(cp);
+            int off = bits >>> ENSIP15.GROUP_SHIFT;
+            Group primary = null;
+            for (Group g: ens.groups) {
+                boolean member = bits != 0 && (d.groupPatterns[off + (g.index >>> 6)] & (1L << g.index)) != 0;
+                Assertions.assertEquals(g.contains(cp), member);
+                if (primary == null && g.primary.contains(cp)) primary = g;
+            }
+            Assertions.assertEquals(primary == null ? -1 : primary.index, (bits & ENSIP15.GROUP_PRIMARY) - 1);
+        }
+    }
+    
+    @Test void intSetKinds() {
+        ArrayList<ReadOnlyIntSet> sets = new ArrayList<>();
+        ENSIP15 ens = ENSNormalize.ENSIP15;
+        sets.add(ens.possiblyValid);
+        sets.add(ens.combiningMarks);
+        sets.add(ens.shouldEscape);
+        sets.add(ReadOnlyIntSet.EMPTY);
+        for (Group g: ens.groups) {
+            sets.add(g.primary);
+            sets.add(g.secondary);
+        }
+        for (ReadOnlyIntSet set: sets) {
+            ReadOnlyIntSet[] kinds = {
+                new ReadOnlyIntSet(set.array, ReadOnlyIntSet.SORTED),
+                new ReadOnlyIntSet(set.array, ReadOnlyIntSet.RANGES),
+                new ReadOnlyIntSet(set.array, ReadOnlyIntSet.BITMAP)
+            };
+            for (int x: set.array) {
+                for (int cp = x - 1; cp <= x + 1; cp++) {
+                    boolean expect = Arrays.binarySearch(set.array, cp) >= 0;
+                    Assertions.assertEquals(expect, set.contains(cp));
+                    for (ReadOnlyIntSet k: kinds) {
+                        Assertions.assertEquals(expect, k.contains(cp));
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test void tieredInit() {
+        byte[] nf = ENSNormalize.readResource("/nf.bin");
+        byte[] spec = ENSNormalize.readResource("/spec.bin");
+        ENSIP15 ens = new ENSIP15(ENSNormalize.NF, ENSNormalize.decoder(spec), ENSNormalize.snapshot("/snapshot.bin", Snapshot.hash(nf, spec)));
+        Assertions.assertEquals("vitalik.eth", ens.normalize("VITALIK.eth"));
+        Assertions.assertFalse(ens.isDerived()); // ascii only
+        Assertions.assertEquals("💩.eth", ens.normalize("💩.eth"));
+        Assertions.assertTrue(ens.isDerived());
+        ENSNormalize.warmupAsync().join();
+        Assertions.assertTrue(ENSNormalize.ENSIP15.isDerived());
+    }
+    
     @Test void NFTests() {
         int errors = 0;
         for (Entry<String,Object> section: new JSONObject(asUTF8(readFile("data/nf-tests.json"))).toMap().entrySet()) {
@@ -94,6 +652,33 @@ class Tests {
         Assertions.assertEquals(0, errors);
     }
     
+    @Test void NFQuickCheck() {
+        NF nf = ENSNormalize.NF;
+        for (int cp = 0; cp < NF.QC_MIN; cp++) {
+            Assertions.assertEquals(0, nf.info.get(cp) & ~NF.DECOMP_MASK); // starter, NFC_QC=Yes
+        }
+        String ascii = "raffy";
+        Assertions.assertSame(ascii, nf.NFC(ascii));
+        ArrayList<String> inputs = new ArrayList<>();
+        for (Object section: new JSONObject(asUTF8(readFile("data/nf-tests.json"))).toMap().values()) {
+            for (Object test: (List)section) {
+                List list = (List)test;
+                inputs.add((String)list.get(0));
+                inputs.add((String)list.get(2));
+            }
+        }
+        IntList packed = new IntList();
+        IntList stack = new IntList();
+        for (int i = 0, n = inputs.size(); i < n; i++) {
+            // fast path must match full normalization, including across joins
+            int[] cps = StringUtils.explode(inputs.get(i) + inputs.get((i + 1) % n));
+            IntList full = new IntList();
+            nf.decompose(cps, 0, cps.length, packed, stack);
+            nf.composeFromPacked(packed.array, packed.count, full, stack);
+            Assertions.assertArrayEquals(full.toArray(), nf.NFC(cps));
+        }
+    }
+    
     @Test void validationTests() {
         int errors = 0;
         for (Object test: new JSONArray(asUTF8(readFile("data/tests.json")))) {
@@ -119,7 +704,7 @@ class Tests {
         }
         Assertions.assertEquals(0, errors);
     }
-
+    
     static byte[] readFile(String path) {
         try {
             return Files.readAllBytes(Paths.get(path));
@@ -132,4 +717,10 @@ class Tests {
         return new String(v, StandardCharsets.UTF_8);
     }
     
+    static String toHex(byte[] v) {
+        StringBuilder sb = new StringBuilder(v.length << 1);
+        for (byte x: v) sb.append(String.format("%02x", x));
+        return sb.toString();
+    }
+
 }
@@ -0,0 +1,146 @@
+package io.github.adraffy.ens;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+// Java 9+ (see NormProcessor)
+class FlowTests {
+    
+    static final ExecutorService POOL = Executors.newFixedThreadPool(4, r -> {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    });
+    
+    static final String[] NAMES = {"RaFFY.eth", "💩.eth", "a_b", "Ξ.eth", "", "café", "x‍", "日本語", "ab--cd", "1⃣.eth"};
+    
+    static List<String> names(int n) {
+        ArrayList<String> v = new ArrayList<>();
+        for (int i = 0; i < n; i++) v.add(NAMES[i % NAMES.length] + i);
+        return v;
+    }
+    
+    // requests batch at a time
+    static class Collector implements Flow.Subscriber<NormResult> {
+        final int batch;
+        final ArrayList<NormResult> results = new ArrayList<>();
+        final CompletableFuture<List<NormResult>> done = new CompletableFuture<>();
+        Flow.Subscription subscription;
+        int pending;
+        Collector(int batch) {
+            this.batch = batch;
+        }
+        @Override public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            if (batch > 0) {
+                pending = batch;
+                s.request(batch);
+            }
+        }
+        @Override public void onNext(NormResult r) {
+            results.add(r);
+            if (--pending == 0) {
+                pending = batch;
+                subscription.request(batch);
+            }
+        }
+        @Override public void onError(Throwable err) {
+            done.completeExceptionally(err);
+        }
+        @Override public void onComplete() {
+            done.complete(results);
+        }
+    }
+    
+    static List<NormResult> run(NormProcessor p, List<String> names, int batch) throws Exception {
+        Collector c = new Collector(batch);
+        p.subscribe(c);
+        try (SubmissionPublisher<String> pub = new SubmissionPublisher<>()) {
+            pub.subscribe(p);
+            for (String name: names) pub.submit(name);
+        }
+        return c.done.get(30, TimeUnit.SECONDS);
+    }
+    
+    static void assertResult(String name, NormResult r) {
+        NormResult expect = ENSNormalize.ENSIP15.tryNormalize(name);
+        Assertions.assertEquals(name, r.input);
+        Assertions.assertEquals(expect.name, r.name);
+        Assertions.assertEquals(expect.error == null ? null : expect.error.kind, r.error == null ? null : r.error.kind);
+    }
+    
+    @Test void ordered() throws Exception {
+        List<String> names = names(5000);
+        for (int batch: new int[]{1, 7, Integer.MAX_VALUE}) {
+            List<NormResult> results = run(new NormProcessor(ENSNormalize.ENSIP15, POOL, 4, true), names, batch);
+            Assertions.assertEquals(names.size(), results.size());
+            for (int i = 0; i < names.size(); i++) {
+                assertResult(names.get(i), results.get(i));
+            }
+        }
+    }
+    
+    @Test void unordered() throws Exception {
+        List<String> names = names(5000);
+        List<NormResult> results = run(new NormProcessor(ENSNormalize.ENSIP15, POOL, 4, false), names, 16);
+        Assertions.assertEquals(names.size(), results.size());
+        boolean[] seen = new boolean[names.size()];
+        for (NormResult r: results) {
+            int i = Integer.parseInt(r.input.replaceAll("^.*?(\\d+)$", "$1"));
+            Assertions.assertFalse(seen[i]);
+            seen[i] = true;
+            assertResult(names.get(i), r);
+        }
+    }
+    
+    @Test void backpressure() throws Exception {
+        AtomicLong requested = new AtomicLong();
+        ArrayList<Flow.Subscriber<? super String>> up = new ArrayList<>();
+        Flow.Publisher<String> pub = s -> {
+            up.add(s);
+            s.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) { requested.addAndGet(n); }
+                @Override public void cancel() {}
+            });
+        };
+        NormProcessor p = new NormProcessor(ENSNormalize.ENSIP15, Runnable::run, 2, 8, true);
+        Collector c = new Collector(0); // no demand yet
+        p.subscribe(c);
+        pub.subscribe(p);
+        Assertions.assertEquals(8, requested.get()); // capacity
+        for (int i = 0; i < 8; i++) up.get(0).onNext("a" + i);
+        Assertions.assertEquals(8, requested.get()); // full: nothing delivered
+        Assertions.assertTrue(c.results.isEmpty());
+        c.subscription.request(4);
+        Assertions.assertEquals(4, c.results.size());
+        Assertions.assertEquals("a0", c.results.get(0).name);
+        Assertions.assertEquals(12, requested.get()); // refilled
+        up.get(0).onComplete();
+        c.subscription.request(Long.MAX_VALUE);
+        Assertions.assertEquals(8, c.done.get(1, TimeUnit.SECONDS).size());
+    }
+    
+    @Test void errors() throws Exception {
+        NormProcessor p = new NormProcessor(ENSNormalize.ENSIP15);
+        Collector c = new Collector(1);
+        p.subscribe(c);
+        Collector other = new Collector(1);
+        p.subscribe(other); // single subscriber
+        Assertions.assertThrows(Exception.class, () -> other.done.get(1, TimeUnit.SECONDS));
+        try (SubmissionPublisher<String> pub = new SubmissionPublisher<>()) {
+            pub.subscribe(p);
+            pub.closeExceptionally(new IllegalStateException("upstream"));
+        }
+        Assertions.assertThrows(Exception.class, () -> c.done.get(5, TimeUnit.SECONDS));
+    }
+
+}